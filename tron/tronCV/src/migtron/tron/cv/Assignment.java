@@ -0,0 +1,254 @@
+/*
+ *  Copyright (C) 2019 by Migtron Robotics   
+ *  albarral@migtron.com
+ */
+package migtron.tron.cv;
+
+import java.util.Arrays;
+
+/**
+* Linear assignment solvers (minimum cost), based on shortest augmenting paths with dual potentials (Jonker-Volgenant family).
+* Rows are assigned one at a time, each through the cheapest augmenting path found with reduced costs, so the result is optimal (not approximated).
+* The dense solver walks all columns of each scanned row. The sparse solver only walks the given edges (Dijkstra with an indexed heap).
+* Costs must be non negative.
+* @author albarral
+ */
+
+class Assignment
+{
+    private static final double INF = Double.POSITIVE_INFINITY;
+
+    // solve a dense assignment problem (rows <= cols), with costs given in row major order
+    // returns the column assigned to each row
+    static int[] solveDense(double[] cost, int rows, int cols)
+    {
+        double[] u = new double[rows];  // row potentials
+        double[] v = new double[cols];  // col potentials
+        double[] pathCost = new double[cols];   // shortest path costs to cols
+        int[] path = new int[cols];     // previous row in the shortest path to each col
+        int[] col4row = new int[rows];
+        int[] row4col = new int[cols];
+        boolean[] scannedRows = new boolean[rows];
+        boolean[] scannedCols = new boolean[cols];
+        int[] remaining = new int[cols];    // cols not yet scanned
+        Arrays.fill(col4row, -1);
+        Arrays.fill(row4col, -1);
+
+        for (int curRow=0; curRow<rows; curRow++)
+        {
+            Arrays.fill(pathCost, INF);
+            Arrays.fill(scannedRows, false);
+            Arrays.fill(scannedCols, false);
+            for (int j=0; j<cols; j++)
+                remaining[j] = j;
+            int numRemaining = cols;
+
+            // find the shortest augmenting path from the present row to a free col
+            double minVal = 0;
+            int i = curRow;
+            int sink = -1;
+            while (sink == -1)
+            {
+                scannedRows[i] = true;
+                int index = -1;
+                double lowest = INF;
+                int base = i*cols;
+                for (int k=0; k<numRemaining; k++)
+                {
+                    int j = remaining[k];
+                    double reduced = minVal + cost[base + j] - u[i] - v[j];
+                    if (reduced < pathCost[j])
+                    {
+                        path[j] = i;
+                        pathCost[j] = reduced;
+                    }
+                    // on equal costs free cols are preferred (shorter paths)
+                    if (pathCost[j] < lowest || (pathCost[j] == lowest && row4col[j] == -1))
+                    {
+                        lowest = pathCost[j];
+                        index = k;
+                    }
+                }
+                minVal = lowest;
+                int j = remaining[index];
+                if (row4col[j] == -1)
+                    sink = j;
+                else
+                    i = row4col[j];
+                scannedCols[j] = true;
+                remaining[index] = remaining[--numRemaining];
+            }
+
+            // update potentials
+            u[curRow] += minVal;
+            for (int r=0; r<rows; r++)
+                if (scannedRows[r] && r != curRow)
+                    u[r] += minVal - pathCost[col4row[r]];
+            for (int j=0; j<cols; j++)
+                if (scannedCols[j])
+                    v[j] -= minVal - pathCost[j];
+
+            augment(curRow, sink, path, col4row, row4col);
+        }
+        return col4row;
+    }
+
+    // solve a sparse assignment problem, given by the edges of each row in compressed form
+    // (edges of row i are in positions rowStart[i] to rowStart[i+1]-1 of edgeCols and edgeCosts)
+    // every row must be assignable (a perfect assignment of rows must exist)
+    // returns the column assigned to each row
+    static int[] solveSparse(int[] rowStart, int[] edgeCols, double[] edgeCosts, int rows, int cols)
+    {
+        double[] u = new double[rows];  // row potentials
+        double[] v = new double[cols];  // col potentials
+        double[] pathCost = new double[cols];   // shortest path costs to cols
+        int[] path = new int[cols];     // previous row in the shortest path to each col
+        int[] col4row = new int[rows];
+        int[] row4col = new int[cols];
+        boolean[] scannedCols = new boolean[cols];
+        int[] scannedRowsList = new int[rows];
+        int[] scannedColsList = new int[cols];
+        int[] touchedList = new int[cols];      // cols reached in present search
+        int[] heap = new int[cols];     // indexed min heap of reached cols (by path cost)
+        int[] heapPos = new int[cols];  // position of each col in the heap (-1 if not in heap)
+        Arrays.fill(col4row, -1);
+        Arrays.fill(row4col, -1);
+        Arrays.fill(pathCost, INF);
+        Arrays.fill(heapPos, -1);
+
+        for (int curRow=0; curRow<rows; curRow++)
+        {
+            int numScannedRows = 0;
+            int numScannedCols = 0;
+            int numTouched = 0;
+            int heapSize = 0;
+
+            // find the shortest augmenting path from the present row to a free col
+            double minVal = 0;
+            int i = curRow;
+            int sink = -1;
+            while (sink == -1)
+            {
+                scannedRowsList[numScannedRows++] = i;
+                for (int e=rowStart[i]; e<rowStart[i+1]; e++)
+                {
+                    int j = edgeCols[e];
+                    if (scannedCols[j])
+                        continue;
+                    double reduced = minVal + edgeCosts[e] - u[i] - v[j];
+                    if (reduced < pathCost[j])
+                    {
+                        if (pathCost[j] == INF)
+                            touchedList[numTouched++] = j;
+                        path[j] = i;
+                        pathCost[j] = reduced;
+                        if (heapPos[j] == -1)
+                        {
+                            heapPos[j] = heapSize;
+                            heap[heapSize++] = j;
+                        }
+                        siftUp(heap, heapPos, pathCost, heapPos[j]);
+                    }
+                }
+                // safety check
+                if (heapSize == 0)
+                    throw new java.lang.IllegalArgumentException("Assignment problem has no feasible solution");
+
+                // take the closest col
+                int j = heap[0];
+                heapPos[j] = -1;
+                if (--heapSize > 0)
+                {
+                    heap[0] = heap[heapSize];
+                    heapPos[heap[0]] = 0;
+                    siftDown(heap, heapPos, pathCost, 0, heapSize);
+                }
+                minVal = pathCost[j];
+                scannedCols[j] = true;
+                scannedColsList[numScannedCols++] = j;
+                if (row4col[j] == -1)
+                    sink = j;
+                else
+                    i = row4col[j];
+            }
+
+            // update potentials
+            u[curRow] += minVal;
+            for (int k=1; k<numScannedRows; k++)
+            {
+                int r = scannedRowsList[k];
+                u[r] += minVal - pathCost[col4row[r]];
+            }
+            for (int k=0; k<numScannedCols; k++)
+            {
+                int j = scannedColsList[k];
+                v[j] -= minVal - pathCost[j];
+            }
+
+            augment(curRow, sink, path, col4row, row4col);
+
+            // reset the search state (only the touched cols)
+            for (int k=0; k<numTouched; k++)
+            {
+                int j = touchedList[k];
+                pathCost[j] = INF;
+                scannedCols[j] = false;
+                heapPos[j] = -1;
+            }
+        }
+        return col4row;
+    }
+
+    // assign the cols along the found path, back from the sink to the present row
+    private static void augment(int curRow, int sink, int[] path, int[] col4row, int[] row4col)
+    {
+        int j = sink;
+        while (true)
+        {
+            int i = path[j];
+            row4col[j] = i;
+            int previous = col4row[i];
+            col4row[i] = j;
+            j = previous;
+            if (i == curRow)
+                break;
+        }
+    }
+
+    // move up a heap element while smaller than its parent
+    private static void siftUp(int[] heap, int[] heapPos, double[] keys, int k)
+    {
+        int element = heap[k];
+        while (k > 0)
+        {
+            int parent = (k - 1) / 2;
+            if (keys[heap[parent]] <= keys[element])
+                break;
+            heap[k] = heap[parent];
+            heapPos[heap[k]] = k;
+            k = parent;
+        }
+        heap[k] = element;
+        heapPos[element] = k;
+    }
+
+    // move down a heap element while bigger than its children
+    private static void siftDown(int[] heap, int[] heapPos, double[] keys, int k, int size)
+    {
+        int element = heap[k];
+        int half = size / 2;
+        while (k < half)
+        {
+            int child = 2*k + 1;
+            if (child + 1 < size && keys[heap[child + 1]] < keys[heap[child]])
+                child++;
+            if (keys[element] <= keys[heap[child]])
+                break;
+            heap[k] = heap[child];
+            heapPos[heap[k]] = k;
+            k = child;
+        }
+        heap[k] = element;
+        heapPos[element] = k;
+    }
+}
@@ -4,16 +4,31 @@
  */
 package migtron.tron.cv;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
 import org.opencv.core.Point;
 import org.opencv.core.Point3;
 
 
 /**
  * Utility class to compute averages on OpenCV points
+ * Averages can also be computed on primitive buffers of interleaved channels (as read from a matrix) or directly on matrices, 
+ * writing the result in a caller given array, so no objects are created per element.
+ * Big inputs are reduced in parallel (fork-join) with compensated sums.
  * @author albarral
  */
 public class AverageCV
 {
+    private static final int PARALLEL_MIN = 1 << 15;    // minimum elements for parallel reductions
+    private static final int PARALLEL_LEAF = 1 << 13;   // elements reduced by each parallel task
+    // reusable buffers for matrix reductions (one set per thread): values and weights
+    private static final ThreadLocal<float[]> valueBuffers = ThreadLocal.withInitial(() -> new float[0]);
+    private static final ThreadLocal<int[]> weightBuffers = ThreadLocal.withInitial(() -> new int[0]);
+    private static final ThreadLocal<short[]> shortBuffers = ThreadLocal.withInitial(() -> new short[0]);
+
     // calculates the average of an array of 2D points
     public static Point compute2DAverage(Point[] points)
     {
@@ -117,4 +132,204 @@ public class AverageCV
         
         return avg;
     }
+
+    // calculates the average of a buffer of interleaved channels (the number of elements is values.length / channels)
+    // the average is written in the given array (of channels size)
+    public static void computeAverage(float[] values, int channels, double[] average)
+    {
+        computeWeightedAverage(values, null, channels, null, values.length / channels, average);
+    }
+
+    // calculates the average of a buffer of interleaved channels (the number of elements is values.length / channels)
+    // the average is written in the given array (of channels size)
+    public static void computeAverage(double[] values, int channels, double[] average)
+    {
+        computeWeightedAverage(null, values, channels, null, values.length / channels, average);
+    }
+
+    // calculates the weighted average of a buffer of interleaved channels (one weight per element)
+    // the average is written in the given array (of channels size), and the total weight is returned
+    public static long computeWeightedAverage(float[] values, int channels, int[] weights, double[] average)
+    {
+        // safety check (one weight per element)
+        if (values.length < weights.length * channels)
+        {
+            java.util.Arrays.fill(average, 0, channels, 0.0);
+            return 0;
+        }
+        return computeWeightedAverage(values, null, channels, weights, weights.length, average);
+    }
+
+    // calculates the weighted average of a buffer of interleaved channels (one weight per element)
+    // the average is written in the given array (of channels size), and the total weight is returned
+    public static long computeWeightedAverage(double[] values, int channels, int[] weights, double[] average)
+    {
+        // safety check (one weight per element)
+        if (values.length < weights.length * channels)
+        {
+            java.util.Arrays.fill(average, 0, channels, 0.0);
+            return 0;
+        }
+        return computeWeightedAverage(null, values, channels, weights, weights.length, average);
+    }
+
+    // calculates the weighted average of the elements of a matrix (float, any number of channels), 
+    // using the weights of an equally sized matrix (single channel, integer values)
+    // the matrices can be submatrices. The average is written in the given array (of channels size), and the total weight is returned
+    public static long computeWeightedAverage(Mat values, Mat weights, double[] average)
+    {
+        int channels = values.channels();
+        int size = values.rows() * values.cols();
+        // safety check (same sizes, float values)
+        if (!values.size().equals(weights.size()) || weights.channels() != 1 || values.depth() != CvType.CV_32F || size == 0)
+        {
+            java.util.Arrays.fill(average, 0, channels, 0.0);
+            return 0;
+        }
+
+        // read both matrices with single bulk accesses into the thread buffers
+        float[] valueBuffer = valueBuffers.get();
+        if (valueBuffer.length < size * channels)
+        {
+            valueBuffer = new float[size * channels];
+            valueBuffers.set(valueBuffer);
+        }
+        values.get(0, 0, valueBuffer);
+        int[] weightBuffer = readWeights(weights, size);
+
+        return computeWeightedAverage(valueBuffer, null, channels, weightBuffer, size, average);
+    }
+
+    // read the weights matrix into the thread buffer (unsigned short weights are widened)
+    private static int[] readWeights(Mat weights, int size)
+    {
+        int[] weightBuffer = weightBuffers.get();
+        if (weightBuffer.length < size)
+        {
+            weightBuffer = new int[size];
+            weightBuffers.set(weightBuffer);
+        }
+        if (weights.depth() == CvType.CV_32S)
+            weights.get(0, 0, weightBuffer);
+        else if (weights.depth() == CvType.CV_16U)
+        {
+            short[] shortBuffer = shortBuffers.get();
+            if (shortBuffer.length < size)
+            {
+                shortBuffer = new short[size];
+                shortBuffers.set(shortBuffer);
+            }
+            weights.get(0, 0, shortBuffer);
+            for (int i=0; i<size; i++)
+                weightBuffer[i] = shortBuffer[i] & 0xFFFF;
+        }
+        else
+        {
+            Mat mat = new Mat();
+            weights.convertTo(mat, CvType.CV_32S);
+            mat.get(0, 0, weightBuffer);
+        }
+        return weightBuffer;
+    }
+
+    // calculates the (weighted) average of the first elements of a float or double buffer (the other one is null)
+    // null weights means unweighted. Big inputs are reduced in parallel.
+    private static long computeWeightedAverage(float[] floatValues, double[] doubleValues, int channels, int[] weights, int elements, double[] average)
+    {
+        double[] sums;
+        if (elements >= PARALLEL_MIN)
+            sums = ForkJoinPool.commonPool().invoke(new SumTask(floatValues, doubleValues, channels, weights, 0, elements));
+        else
+            sums = sum(floatValues, doubleValues, channels, weights, 0, elements, new double[2*channels + 1]);
+
+        // sums holds the channel sums, then their compensations and the total weight
+        double total = sums[2*channels];
+        for (int c=0; c<channels; c++)
+            average[c] = (total != 0) ? (sums[c] + sums[channels + c]) / total : 0.0;
+        return (long)total;
+    }
+
+    // sum the given range of elements (weighted if weights given) with compensated (Neumaier) sums
+    // the result holds the channel sums, their compensations and the total weight
+    private static double[] sum(float[] floatValues, double[] doubleValues, int channels, int[] weights, int start, int end, double[] sums)
+    {
+        long total = 0;
+        for (int c=0; c<channels; c++)
+        {
+            double sum = 0.0;
+            double compensation = 0.0;
+            for (int i=start, k=start*channels + c; i<end; i++, k+=channels)
+            {
+                double value = (floatValues != null) ? floatValues[k] : doubleValues[k];
+                if (weights != null)
+                    value *= weights[i];
+                double t = sum + value;
+                if (Math.abs(sum) >= Math.abs(value))
+                    compensation += (sum - t) + value;
+                else
+                    compensation += (value - t) + sum;
+                sum = t;
+            }
+            sums[c] = sum;
+            sums[channels + c] = compensation;
+        }
+        if (weights != null)
+        {
+            for (int i=start; i<end; i++)
+                total += weights[i];
+        }
+        else
+            total = end - start;
+        sums[2*channels] = total;
+        return sums;
+    }
+
+    // parallel compensated sum of a range of elements (split in halves until small enough)
+    private static class SumTask extends RecursiveTask<double[]>
+    {
+        private static final long serialVersionUID = 1L;
+        private final float[] floatValues;
+        private final double[] doubleValues;
+        private final int channels;
+        private final int[] weights;
+        private final int start;
+        private final int end;
+
+        SumTask(float[] floatValues, double[] doubleValues, int channels, int[] weights, int start, int end)
+        {
+            this.floatValues = floatValues;
+            this.doubleValues = doubleValues;
+            this.channels = channels;
+            this.weights = weights;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected double[] compute()
+        {
+            if (end - start <= PARALLEL_LEAF)
+                return sum(floatValues, doubleValues, channels, weights, start, end, new double[2*channels + 1]);
+
+            int middle = (start + end) >>> 1;
+            SumTask task1 = new SumTask(floatValues, doubleValues, channels, weights, start, middle);
+            SumTask task2 = new SumTask(floatValues, doubleValues, channels, weights, middle, end);
+            task1.fork();
+            double[] sums2 = task2.compute();
+            double[] sums1 = task1.join();
+
+            // join both compensated sums
+            for (int c=0; c<channels; c++)
+            {
+                double sum1 = sums1[c];
+                double sum2 = sums2[c];
+                double t = sum1 + sum2;
+                double compensation = (Math.abs(sum1) >= Math.abs(sum2)) ? (sum1 - t) + sum2 : (sum2 - t) + sum1;
+                sums1[c] = t;
+                sums1[channels + c] += sums2[channels + c] + compensation;
+            }
+            sums1[2*channels] += sums2[2*channels];
+            return sums1;
+        }
+    }
 }
@@ -0,0 +1,353 @@
+/*
+ *  Copyright (C) 2019 by Migtron Robotics   
+ *  albarral@migtron.com
+ */
+package migtron.tron.cv;
+
+import migtron.tron.math.Ellipse;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+
+/**
+* This class represents a binary 2D mask packed in bits (one bit per pixel).
+* Each mask row is stored in its own sequence of long words, so logical operations work on 64 pixels at a time without leaving java.
+* It offers the same operations as the Mask class, and conversions between both forms are lossless for binary masks.
+* @author albarral
+ */
+
+public class BitMask implements Cloneable
+{
+    private long[] words;   // mask bits (row aligned words, bits beyond the window width are always 0)
+    private int wordsPerRow;   // words used by each row
+    private Rect window;   // mask window in image
+
+    // create empty mask with given window
+    public BitMask(Rect window)
+    {
+        allocate(window);
+    }
+
+    // create bit version of given mask (all non zero pixels are set)
+    public BitMask(Mask mask)
+    {
+        this(mask.getWindow());
+        Mat mat = mask.getMat();
+        int w = mat.width();
+        int h = mat.height();
+        byte[] buffer = new byte[w*h];
+        mat.get(0, 0, buffer);
+
+        int i = 0;
+        for (int y=0; y<h; y++)
+        {
+            int base = y*wordsPerRow;
+            for (int x=0; x<w; x++, i++)
+            {
+                if (buffer[i] != 0)
+                    words[base + (x >>> 6)] |= 1L << x;
+            }
+        }
+    }
+
+    @Override
+    public Object clone()
+    {
+        try {
+            BitMask cloned = (BitMask)super.clone();
+            cloned.words = words.clone();
+            cloned.window = window.clone();
+            return cloned;
+        }
+        catch (CloneNotSupportedException e) {
+         throw new AssertionError();
+      }
+    }
+
+    public boolean isValid() {return (words != null);}
+    public Rect getWindow() {return window;};
+
+    // get matrix version of this mask (byte single channel, set pixels valued 255)
+    public Mat getMat()
+    {
+        return toMask().getMat();
+    }
+
+    // check if the given mask pixel (in image coordinates) is set
+    public boolean get(int x, int y)
+    {
+        int x2 = x - window.x;
+        int y2 = y - window.y;
+        if (x2 < 0 || y2 < 0 || x2 >= window.width || y2 >= window.height)
+            return false;
+        return (words[y2*wordsPerRow + (x2 >>> 6)] & (1L << x2)) != 0;
+    }
+
+    // convert to standard mask form
+    public Mask toMask()
+    {
+        int w = window.width;
+        int h = window.height;
+        byte[] buffer = new byte[w*h];
+        int i = 0;
+        for (int y=0; y<h; y++)
+        {
+            int base = y*wordsPerRow;
+            for (int x=0; x<w; x++, i++)
+            {
+                if ((words[base + (x >>> 6)] & (1L << x)) != 0)
+                    buffer[i] = (byte)255;
+            }
+        }
+        Mat mat = new Mat(h, w, CvType.CV_8UC1);
+        if (buffer.length != 0)
+            mat.put(0, 0, buffer);
+        return Mask.createCropped(mat, window);
+    }
+
+    public void clear()
+    {
+        allocate(new Rect(0,0,0,0));
+    }
+
+    // compute mask area
+    public int computeMass()
+    {
+        int mass = 0;
+        for (long word : words)
+            mass += Long.bitCount(word);
+        return mass;
+    }
+
+    // compute the spatial moments of this mask (in window coordinates)
+    public Moments computeMoments()
+    {
+        Moments moments = new Moments();
+        for (int y=0; y<window.height; y++)
+        {
+            int base = y*wordsPerRow;
+            for (int k=0; k<wordsPerRow; k++)
+            {
+                long word = words[base + k];
+                // walk set bits, adding the runs of consecutive pixels
+                while (word != 0)
+                {
+                    int start = Long.numberOfTrailingZeros(word);
+                    int end = start + Long.numberOfTrailingZeros(~(word >>> start));
+                    moments.addRun(y, 64*k + start, 64*k + end);
+                    word &= (end == 64) ? 0 : (-1L << end);
+                }
+            }
+        }
+        return moments;
+    }
+
+    // compute the elliptic representation a this mask
+    public Ellipse computeEllipse()
+    {
+        return computeMoments().computeEllipse(window.x, window.y);
+    }
+
+    // compute the mask area inside the given window (in image coordinates)
+    public int computeMass(Rect window)
+    {
+        // given window clipped to the mask window (in mask coordinates)
+        int x0 = Math.max(window.x, this.window.x) - this.window.x;
+        int y0 = Math.max(window.y, this.window.y) - this.window.y;
+        int x1 = Math.min(window.x + window.width, this.window.x + this.window.width) - this.window.x;
+        int y1 = Math.min(window.y + window.height, this.window.y + this.window.height) - this.window.y;
+        if (x0 >= x1 || y0 >= y1)
+            return 0;
+
+        int mass = 0;
+        int span = x1 - x0;
+        long lastWord = lastWordMask(span);
+        int spanWords = (span + 63) >>> 6;
+        for (int y=y0; y<y1; y++)
+        {
+            int base = y*wordsPerRow;
+            for (int k=0; k<spanWords-1; k++)
+                mass += Long.bitCount(readBits(words, base, wordsPerRow, x0 + 64*k));
+            mass += Long.bitCount(readBits(words, base, wordsPerRow, x0 + 64*(spanWords-1)) & lastWord);
+        }
+        return mass;
+    }
+
+    // extract a level curve from the mask for the given value (as in Mask, set pixels are valued 255)
+    // the level curve is returned as a mask
+    public Mat computeLevelCurve(int value)
+    {
+        if (value == 255)
+            return getMat();
+        Mat mat = new Mat(Math.max(window.height, 0), Math.max(window.width, 0), CvType.CV_8UC1);
+        if (value == 0)
+            Core.compare(getMat(), new Scalar(0), mat, Core.CMP_EQ);
+        else
+            mat.setTo(new Scalar(0));
+        return mat;
+    }
+
+    // binarize the mask using a specified threshold value (as in Mask, set pixels are valued 255)
+    // bit masks are already binary, so only thresholds out of the [0, 255) range change them
+    public void binarize(int value)
+    {
+        if (value >= 255)
+            java.util.Arrays.fill(words, 0);
+        else if (value < 0)
+        {
+            long lastWord = lastWordMask(window.width);
+            java.util.Arrays.fill(words, -1L);
+            for (int i=wordsPerRow-1; i<words.length; i+=wordsPerRow)
+                words[i] &= lastWord;
+        }
+    }
+
+    // count the pixels informed in both this mask and the given one
+    // only the intersection of both windows is walked, a word at a time
+    public int countOverlap(BitMask mask)
+    {
+        // windows intersection (in image coordinates)
+        int x0 = Math.max(window.x, mask.window.x);
+        int y0 = Math.max(window.y, mask.window.y);
+        int x1 = Math.min(window.x + window.width, mask.window.x + mask.window.width);
+        int y1 = Math.min(window.y + window.height, mask.window.y + mask.window.height);
+        if (x0 >= x1 || y0 >= y1)
+            return 0;
+
+        int count = 0;
+        int span = x1 - x0;
+        long lastWord = lastWordMask(span);
+        int spanWords = (span + 63) >>> 6;
+        int dx1 = x0 - window.x;
+        int dx2 = x0 - mask.window.x;
+        for (int y=y0; y<y1; y++)
+        {
+            int base1 = (y - window.y)*wordsPerRow;
+            int base2 = (y - mask.window.y)*mask.wordsPerRow;
+            for (int k=0; k<spanWords; k++)
+            {
+                long a = readBits(words, base1, wordsPerRow, dx1 + 64*k);
+                long b = readBits(mask.words, base2, mask.wordsPerRow, dx2 + 64*k);
+                long both = a & b;
+                if (k == spanWords-1)
+                    both &= lastWord;
+                count += Long.bitCount(both);
+            }
+        }
+        return count;
+    }
+
+    // compute the fraction of this mask overlapped by the given one
+    public float computeOverlapFraction1(BitMask mask)
+    {
+        int mass = computeMass();
+        if (mass != 0)
+            return (float)countOverlap(mask) / mass;
+        else
+            return 0.0f;
+    }
+
+    // compute the fraction of the given mask overlapped by this one
+    public float computeOverlapFraction2(BitMask mask)
+    {
+        int mass = mask.computeMass();
+        if (mass != 0)
+            return (float)countOverlap(mask) / mass;
+        else
+            return 0.0f;
+    }
+
+    // merge this mask with another one
+    public void merge(BitMask mask)
+    {
+        combine(mask, Window.getUnion(window, mask.window), true);
+    }
+
+    // intersect this mask with another one
+    public void intersect(BitMask mask)
+    {
+        combine(mask, Window.getIntersection(window, mask.window), false);
+    }
+
+    // logical and of this mask with another one, resulting in a union size mask
+    public void and(BitMask mask)
+    {
+        combine(mask, Window.getUnion(window, mask.window), false);
+    }
+
+    // combine this mask with another one (logical or / logical and), placing the result in the given window
+    private void combine(BitMask mask, Rect newWindow, boolean bor)
+    {
+        long[] words1 = words;
+        int wpr1 = wordsPerRow;
+        Rect window1 = window;
+        allocate(newWindow);
+
+        // bit offsets of both sources in the new window
+        int dx1 = window.x - window1.x;
+        int dx2 = window.x - mask.window.x;
+        long lastWord = lastWordMask(window.width);
+        for (int y=0; y<window.height; y++)
+        {
+            int y1 = window.y + y - window1.y;
+            int y2 = window.y + y - mask.window.y;
+            boolean in1 = (y1 >= 0 && y1 < window1.height);
+            boolean in2 = (y2 >= 0 && y2 < mask.window.height);
+            // skip rows with no possible result
+            if (bor ? (!in1 && !in2) : (!in1 || !in2))
+                continue;
+
+            int base = y*wordsPerRow;
+            for (int k=0; k<wordsPerRow; k++)
+            {
+                long a = in1 ? readBits(words1, y1*wpr1, wpr1, dx1 + 64*k) : 0;
+                long b = in2 ? readBits(mask.words, y2*mask.wordsPerRow, mask.wordsPerRow, dx2 + 64*k) : 0;
+                words[base + k] = bor ? (a | b) : (a & b);
+            }
+            // keep bits beyond the window width clear
+            words[base + wordsPerRow - 1] &= lastWord;
+        }
+    }
+
+    // read the 64 bits of a row starting at the given bit position (bits outside the row are 0)
+    private static long readBits(long[] src, int base, int wpr, int pos)
+    {
+        if (pos >= 64*wpr || pos <= -64)
+            return 0;
+        if (pos < 0)
+            return src[base] << -pos;
+        int q = pos >>> 6;
+        int r = pos & 63;
+        long value = src[base + q] >>> r;
+        if (r != 0 && q+1 < wpr)
+            value |= src[base + q + 1] << (64 - r);
+        return value;
+    }
+
+    // get the valid bits of the last word of a row with the given width
+    private static long lastWordMask(int width)
+    {
+        int r = width & 63;
+        return (r == 0) ? -1L : (1L << r) - 1;
+    }
+
+    // allocate empty words for the given window
+    private void allocate(Rect window)
+    {
+        this.window = window.clone();
+        int w = Math.max(window.width, 0);
+        int h = Math.max(window.height, 0);
+        wordsPerRow = Math.max((w + 63) >>> 6, 1);
+        words = new long[h*wordsPerRow];
+    }
+
+    @Override
+    public String toString()
+    {
+        String desc = "BitMask [window = (" + String.valueOf(window.x) + "," + String.valueOf(window.y) + "," + String.valueOf(window.width) + "," + String.valueOf(window.height) + ")]";
+        return desc;
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ *  Copyright (C) 2019 by Migtron Robotics   
+ *  albarral@migtron.com
+ */
+package migtron.tron.cv;
+
+import migtron.tron.math.color.RGBColor;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * Utility class to convert the colors of OpenCV images
+ * Conversions are written in a caller given buffer, so no objects are created per pixel.
+ * @author albarral
+ */
+public class ColorCV
+{
+    // reusable buffer for image reads (one per thread)
+    private static final ThreadLocal<byte[]> pixelBuffers = ThreadLocal.withInitial(() -> new byte[0]);
+
+    /**
+     * Converts an RGB image to HSV (same values as RGBColor.toHSV).
+     * @param image RGB image (CV_8UC3)
+     * @param hsv destination buffer for the HSV values (row major, 3 values per pixel), at least 3 x pixels long
+     */
+    public static void toHSV(Mat image, float[] hsv)
+    {
+        // safety check
+        if (image.type() != CvType.CV_8UC3)
+            throw new java.lang.IllegalArgumentException("ColorCV: HSV conversions need an RGB byte image");
+
+        int pixels = (int)image.total();
+        byte[] pixelBuffer = pixelBuffers.get();
+        if (pixelBuffer.length < 3*pixels)
+        {
+            pixelBuffer = new byte[3*pixels];
+            pixelBuffers.set(pixelBuffer);
+        }
+        image.get(0, 0, pixelBuffer);
+        RGBColor.toHSV(pixelBuffer, hsv, pixels);
+    }
+}
@@ -4,15 +4,11 @@
  */
 package migtron.tron.cv;
 
-import java.awt.geom.Point2D.Float;
-
 import migtron.tron.math.Ellipse;
-import migtron.tron.math.Vec3f;
 
 import org.opencv.core.Core;
 import org.opencv.core.CvType;
 import org.opencv.core.Mat;
-import org.opencv.core.MatOfByte;
 import org.opencv.core.Point;
 import org.opencv.core.Rect;
 import org.opencv.core.Scalar;
@@ -30,6 +26,11 @@ public class Mask implements Cloneable
     private Mat mat;       // mask matrix
     private Rect window;   // body window in image
     private final int TYPE = CvType.CV_8UC1;  // byte single channel matrix 
+    // reusable buffers for pixel scans (one set per thread, so masks can be scanned concurrently)
+    // buffer 0 is used for whole mask scans, buffers 1 & 2 for overlap scans (keeping them sized to overlap regions)
+    private static final ThreadLocal<byte[][]> buffers = ThreadLocal.withInitial(() -> new byte[3][0]);
+    private Moments moments;    // cached spatial moments (null if not yet computed)
+    private SummedArea summedArea;  // cached summed area table (null if not yet built)
 
     public Mask(Mat mat, Rect window)
     {
@@ -45,6 +46,28 @@ public class Mask implements Cloneable
         this(mat, new Rect(0, 0, mat.width(), mat.height()));
     }    
         
+    private Mask()
+    {
+    }
+
+    // create a mask from a matrix already cropped to the given window (the matrix is not copied)
+    static Mask createCropped(Mat mat, Rect window)
+    {
+        Mask mask = new Mask();
+        mask.mat = mat;
+        mask.window = window.clone();
+        return mask;
+    }
+        
+    // create a mask from a matrix already cropped to the given window, together with its known moments (in window coordinates)
+    // used by extractors that gather the moments while building the mask (the moments are trusted, not recomputed)
+    public static Mask createWithMoments(Mat mat, Rect window, Moments moments)
+    {
+        Mask mask = createCropped(mat, window);
+        mask.moments = (Moments)moments.clone();
+        return mask;
+    }
+        
     @Override
     public Object clone()
     {
@@ -52,6 +75,10 @@ public class Mask implements Cloneable
             Mask cloned = (Mask)super.clone();
             cloned.mat = mat.clone();
             cloned.window = window.clone();
+            if (moments != null)
+                cloned.moments = (Moments)moments.clone();
+            // the summed area table is rebuilt on demand by the clone
+            cloned.summedArea = null;
             return cloned;
         }
         catch (CloneNotSupportedException e) {
@@ -76,6 +103,7 @@ public class Mask implements Cloneable
             // the mask is croped to the window
             this.mat = mat.submat(window).clone();
             this.window = window.clone();
+            invalidate();
             return true;
         }
         else
@@ -86,66 +114,64 @@ public class Mask implements Cloneable
     {
         mat = null;        
         window = new Rect(0,0,0,0);
+        invalidate();
+    }
+
+    // discard the cached moments and summed area table, must be called after modifying the mask matrix directly
+    public void invalidate()
+    {
+        moments = null;
+        summedArea = null;
     }
 
     // compute mask area
+    // if the moments are cached the mass is directly obtained from them
     public int computeMass()
     {
-        return Core.countNonZero(mat);
+        if (moments != null)
+            return moments.getMass();
+        else
+            return Core.countNonZero(mat);
     }
 
-    // compute the elliptic representation a this mask
-    public Ellipse computeEllipse()
+    // get the cached spatial moments of this mask (in window coordinates)
+    // they are computed on first request and then kept updated through merge, intersect and and operations
+    // the cache itself is returned, so it's kept inside the package (public users get copies through computeMoments)
+    Moments getMoments()
     {
-        // spatial moments
-        int m00 = 0;
-        int m10 = 0;
-        int m01  = 0;
-        long m20 = 0;
-        long m11 = 0;
-        long m02 = 0;
-
-        int w = mat.width();
-        int h = mat.height();
-        // for each row
-        for (int y=0; y<h; y++)
+        if (moments == null)
         {
-            // convert row to buffer
-            MatOfByte matRow = new MatOfByte(mat.row(y));
-            byte[] row = matRow.toArray();
-            // walk row
-            for (int x=0; x<w; x++)
-            {
-              // if pixel informed update moments   
-              if (row[x] != 0)
-              {
-                m00 ++;
-                m10 += x;
-                m01 += y;
-                m20 += x*x;
-                m11 += x*y;
-                m02 += y*y;                  
-              }
-            }
+            moments = new Moments();
+            scanMoments(mat, moments);
         }
+        return moments;
+    }
+    
+    // compute the mask area inside the given window (in image coordinates)
+    // the summed area table is built on first request (and after each mask change), so further queries take constant time
+    public int computeMass(Rect window)
+    {
+        if (summedArea == null)
+            summedArea = new SummedArea(mat);
+        return summedArea.getSum(window.x - this.window.x, window.y - this.window.y, window.width, window.height);
+    }
+
+    // compute the spatial moments of this mask (mass included)
+    public Moments computeMoments()
+    {
+        return (Moments)getMoments().clone();
+    }
 
-        // centroid (inside mask window)
-        float xo = (float)m10/m00;
-        float yo = (float)m01/m00;
-        // central moments
-        double mu20 = m20 - xo*m10;
-        double mu02 = m02 - yo*m01;
-        double mu11 = m11 - xo*m01;
+    // compute the spatial moments of this mask into the given moments object
+    public void computeMoments(Moments moments)
+    {
+        scanMoments(mat, moments);
+    }
 
-        if (m00 != 0)
-        {
-            // compute centroid and covariances from obtained moments
-            return new Ellipse(new Float(xo+window.x, yo+window.y),
-                    new Vec3f((float)(mu20/m00), (float)(mu02/m00), (float)(mu11/m00)));
-        }
-        // if empty mask, null size ellipse returned
-        else
-            return new Ellipse();        
+    // compute the elliptic representation a this mask
+    public Ellipse computeEllipse()
+    {
+        return getMoments().computeEllipse(window.x, window.y);
     }
 
     // extract a level curve from the mask for the given value
@@ -161,6 +187,63 @@ public class Mask implements Cloneable
     public void binarize(int value)
     {
         Imgproc.threshold(mat, mat, value, 255, Imgproc.THRESH_BINARY);
+        invalidate();
+    }
+
+    // count the pixels informed in both this mask and the given one
+    // only the intersection of both windows is walked, and no mask is modified
+    public int countOverlap(Mask mask)
+    {
+        // windows intersection (in image coordinates)
+        int x0 = Math.max(window.x, mask.window.x);
+        int y0 = Math.max(window.y, mask.window.y);
+        int x1 = Math.min(window.x + window.width, mask.window.x + mask.window.width);
+        int y1 = Math.min(window.y + window.height, mask.window.y + mask.window.height);
+        if (x0 >= x1 || y0 >= y1)
+            return 0;
+
+        // read the intersection rows of both masks into the thread buffers
+        int rows = y1 - y0;
+        int w1 = mat.width();
+        int w2 = mask.mat.width();
+        byte[] buffer1 = getBuffer(1, rows*w1);
+        byte[] buffer2 = getBuffer(2, rows*w2);
+        mat.get(y0 - window.y, 0, buffer1);
+        mask.mat.get(y0 - mask.window.y, 0, buffer2);
+
+        int count = 0;
+        int span = x1 - x0;
+        for (int y=0; y<rows; y++)
+        {
+            int i = y*w1 + x0 - window.x;
+            int j = y*w2 + x0 - mask.window.x;
+            for (int end = i + span; i<end; i++, j++)
+            {
+                if (buffer1[i] != 0 && buffer2[j] != 0)
+                    count++;
+            }
+        }
+        return count;
+    }
+
+    // compute the fraction of this mask overlapped by the given one
+    public float computeOverlapFraction1(Mask mask)
+    {
+        int mass = computeMass();
+        if (mass != 0)
+            return (float)countOverlap(mask) / mass;
+        else
+            return 0.0f;
+    }
+
+    // compute the fraction of the given mask overlapped by this one
+    public float computeOverlapFraction2(Mask mask)
+    {
+        int mass = mask.computeMass();
+        if (mass != 0)
+            return (float)countOverlap(mask) / mass;
+        else
+            return 0.0f;
     }
 
     // merge this mask with another one
@@ -179,6 +262,11 @@ public class Mask implements Cloneable
         Mat mat1 = matUnion.submat(window1);    
         mat.copyTo(mat1);
 
+        // if moments are tracked, update them before combining: union = mask1 + mask2 - overlap
+        Moments newMoments = null;
+        if (moments != null || mask.moments != null)
+            newMoments = mergeMoments(mask, union);
+
         // fill mask with second body (logical or)
         Mat mat2 = matUnion.submat(window2);        
         Core.bitwise_or(mask.mat, mat2, mat2);
@@ -186,6 +274,8 @@ public class Mask implements Cloneable
         // finally update this mask with the merge result
         mat = matUnion;
         window = union;
+        moments = newMoments;
+        summedArea = null;
     }
         
     // intersect this mask with another one
@@ -206,6 +296,10 @@ public class Mask implements Cloneable
         // finally update this mask with the intersection result
         mat = matIntersection;
         window = intersection;
+        summedArea = null;
+        // if moments are tracked, get them from the intersection region
+        if (moments != null)
+            scanMoments(mat, moments);
     }
         
     // logical and of this mask with another one, resulting in a union size mask
@@ -231,6 +325,60 @@ public class Mask implements Cloneable
         // finally update this mask with the intersection result
         mat = matUnion;
         window = union;
+        summedArea = null;
+        // if moments are tracked, get them from the intersection region (then moved to the union window)
+        if (moments != null)
+        {
+            scanMoments(mat3, moments);
+            moments.translate(window3.x, window3.y);
+        }
+    }
+
+    // compute the moments resulting from merging this mask with another one (in the union window coordinates)
+    // only the overlapped region is scanned, to correct the sum of both masks moments
+    private Moments mergeMoments(Mask mask, Rect union)
+    {
+        Moments moments1 = (Moments)getMoments().clone();
+        moments1.translate(window.x - union.x, window.y - union.y);
+        Moments moments2 = (Moments)mask.getMoments().clone();
+        moments2.translate(mask.window.x - union.x, mask.window.y - union.y);
+        moments1.add(moments2);
+        
+        Rect intersection = Window.getIntersection(window, mask.window);     
+        if (intersection.width > 0 && intersection.height > 0)
+        {
+            // overlapped pixels (informed in both masks)
+            Mat mat1 = mat.submat(Window.translateAxes(intersection, window.tl()));    
+            Mat mat2 = mask.mat.submat(Window.translateAxes(intersection, mask.window.tl()));        
+            Mat matOverlap = new Mat();
+            Core.min(mat1, mat2, matOverlap);
+            Moments overlap = new Moments();
+            scanMoments(matOverlap, overlap);
+            overlap.translate(intersection.x - union.x, intersection.y - union.y);
+            moments1.subtract(overlap);
+        }
+        return moments1;
+    }
+
+    // compute the spatial moments of the given matrix (byte single channel)
+    // the matrix is read with a single bulk access into a reusable buffer
+    private void scanMoments(Mat mat, Moments moments)
+    {
+        int w = mat.width();
+        int h = mat.height();
+        byte[] buffer = getBuffer(0, w*h);
+        if (w*h != 0)
+            mat.get(0, 0, buffer);
+        moments.compute(buffer, w, h);
+    }
+
+    // get a reusable buffer of the present thread with the given minimum size (grown only when needed)
+    private static byte[] getBuffer(int index, int size)
+    {
+        byte[][] threadBuffers = buffers.get();
+        if (threadBuffers[index].length < size)
+            threadBuffers[index] = new byte[size];
+        return threadBuffers[index];
     }
 
 
@@ -6,11 +6,10 @@ package migtron.tron.cv;
 
 import java.awt.Point;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import org.opencv.core.Core;
-import org.opencv.core.Core.MinMaxLocResult;
+import org.opencv.core.CvType;
 import org.opencv.core.Mat;
-import org.opencv.core.Scalar;
 
 /**
   * Utility class to perform mathematical operations on OpenCV matrices
@@ -18,40 +17,218 @@ import org.opencv.core.Scalar;
  */
 public class MatrixUtils 
 {
+    private static final long NO_CANDIDATE = Long.MAX_VALUE;    // key for rows without candidates
+    
     // compute correspondences between the elements (rows vs cols) of a given matrix  (float single channel)
     // only the values above the specified threshold are considered
+    // correspondences are found greedily: the maximum value is taken first, then the maximum among the remaining rows and cols, and so on
+    // (equal values are taken in row major order). The matrix is read once, and a heap keeps the best candidate of each row, 
+    // so a row is only rescanned when its best col gets used by another row.
     public static List<Point> getCorrespondences(Mat mat, float threshold)
     {
         List<Point> listCorrespondences = new ArrayList<>();
-        
-        // clone input matrix, to avoid altering it
-        Mat mat2 = mat.clone();
-        Scalar zero = new Scalar(0.0);
+        int rows = mat.rows();
+        int cols = mat.cols();
+        if (rows == 0 || cols == 0)
+            return listCorrespondences;
 
-        // searching until no more correspondences found
-        boolean bsearch = true;
-        while (bsearch)
+        float[] values = readValues(mat);
+
+        // heap with the best candidate of each row (ordered by decreasing value, then by position)
+        boolean[] usedCols = new boolean[cols];
+        long[] heap = new long[rows];
+        int size = 0;
+        for (int row=0; row<rows; row++)
         {
-            // find maximum value
-            MinMaxLocResult result = Core.minMaxLoc(mat2);
+            long key = getRowCandidate(values, row, cols, usedCols, threshold);
+            if (key != NO_CANDIDATE)
+                heap[size++] = key;
+        }
+        for (int k=size/2 - 1; k>=0; k--)
+            siftDown(heap, k, size);
 
-            // if value found above the threshold
-            if (result.maxVal > threshold)
+        // take the candidates in order
+        while (size > 0)
+        {
+            int index = (int)heap[0];
+            int row = index / cols;
+            int col = index % cols;
+            // if the candidate col is still free, take it (and discard the row)
+            if (!usedCols[col])
             {
-                int row = (int)result.maxLoc.y;   
-                int col = (int)result.maxLoc.x;   
-
-                // add correspondence
                 listCorrespondences.add(new Point(row, col));
-
-                // and clear other matrix relations of both elements
-                mat2.row(row).setTo(zero);                
-                mat2.col(col).setTo(zero);                
-            }                
-            // otherwise, finish search
+                usedCols[col] = true;
+                heap[0] = heap[--size];
+            }
+            // otherwise replace it by the row's next best candidate (if any)
             else
-                bsearch = false;
-        }     
+            {
+                long key = getRowCandidate(values, row, cols, usedCols, threshold);
+                if (key != NO_CANDIDATE)
+                    heap[0] = key;
+                else
+                    heap[0] = heap[--size];
+            }
+            siftDown(heap, 0, size);
+        }
         return listCorrespondences;
     }        
+
+    // compute the optimal correspondences between the elements (rows vs cols) of a given matrix (float single channel)
+    // only the values above the specified threshold are considered (which must not be negative), 
+    // and the correspondences are chosen to maximize the sum of their values (instead of greedily).
+    // In sparse mode only the above threshold values are walked, which is much faster for big matrices with few candidates per row.
+    // Correspondences are returned in rows order.
+    public static List<Point> getOptimalCorrespondences(Mat mat, float threshold, boolean bsparse)
+    {
+        List<Point> listCorrespondences = new ArrayList<>();
+        int rows = mat.rows();
+        int cols = mat.cols();
+        if (rows == 0 || cols == 0)
+            return listCorrespondences;
+
+        float[] values = readValues(mat);
+        // costs are given as (max - value), so all are positive and minimizing them maximizes the values
+        // leaving an element unpaired costs max (as pairing it with a value of 0)
+        float max = 0.0f;
+        for (float value : values)
+        {
+            if (value > threshold && value > max)
+                max = value;
+        }
+
+        if (bsparse)
+        {
+            // edges of each row: its candidates plus a private dummy col (for leaving it unpaired)
+            int numCandidates = 0;
+            for (float value : values)
+            {
+                if (value > threshold)
+                    numCandidates++;
+            }
+            int[] rowStart = new int[rows + 1];
+            int[] edgeCols = new int[numCandidates + rows];
+            double[] edgeCosts = new double[numCandidates + rows];
+            int e = 0;
+            for (int row=0; row<rows; row++)
+            {
+                rowStart[row] = e;
+                for (int col=0; col<cols; col++)
+                {
+                    float value = values[row*cols + col];
+                    if (value > threshold)
+                    {
+                        edgeCols[e] = col;
+                        edgeCosts[e++] = max - value;
+                    }
+                }
+                edgeCols[e] = cols + row;
+                edgeCosts[e++] = max;
+            }
+            rowStart[rows] = e;
+
+            int[] col4row = Assignment.solveSparse(rowStart, edgeCols, edgeCosts, rows, cols + rows);
+            for (int row=0; row<rows; row++)
+            {
+                if (col4row[row] < cols)
+                    listCorrespondences.add(new Point(row, col4row[row]));
+            }
+        }
+        else
+        {
+            // dense problem (transposed if more rows than cols), non candidates cost as leaving the element unpaired
+            boolean btransposed = (rows > cols);
+            int n1 = btransposed ? cols : rows;
+            int n2 = btransposed ? rows : cols;
+            double[] costs = new double[rows*cols];
+            for (int row=0; row<rows; row++)
+                for (int col=0; col<cols; col++)
+                {
+                    float value = values[row*cols + col];
+                    int index = btransposed ? col*rows + row : row*cols + col;
+                    costs[index] = (value > threshold) ? max - value : max;
+                }
+
+            int[] assigned = Assignment.solveDense(costs, n1, n2);
+            int[] col4row = new int[rows];
+            Arrays.fill(col4row, -1);
+            for (int k=0; k<n1; k++)
+            {
+                if (btransposed)
+                    col4row[assigned[k]] = k;
+                else
+                    col4row[k] = assigned[k];
+            }
+            // only candidate pairs are kept
+            for (int row=0; row<rows; row++)
+            {
+                int col = col4row[row];
+                if (col >= 0 && values[row*cols + col] > threshold)
+                    listCorrespondences.add(new Point(row, col));
+            }
+        }
+        return listCorrespondences;
+    }
+
+    // read the whole matrix at once (as floats)
+    private static float[] readValues(Mat mat)
+    {
+        float[] values = new float[mat.rows()*mat.cols()];
+        if (mat.type() == CvType.CV_32FC1)
+            mat.get(0, 0, values);
+        else
+        {
+            Mat mat2 = new Mat();
+            mat.convertTo(mat2, CvType.CV_32F);
+            mat2.get(0, 0, values);
+        }
+        return values;
+    }
+
+    // get the best candidate of a matrix row among the unused cols (the first one if equal values)
+    // returns its sorting key, or NO_CANDIDATE if no value above threshold
+    private static long getRowCandidate(float[] values, int row, int cols, boolean[] usedCols, float threshold)
+    {
+        int base = row*cols;
+        int bestCol = -1;
+        float bestValue = threshold;
+        for (int col=0; col<cols; col++)
+        {
+            float value = values[base + col];
+            if (value > bestValue && !usedCols[col])
+            {
+                bestValue = value;
+                bestCol = col;
+            }
+        }
+        return (bestCol >= 0) ? getSortKey(bestValue, base + bestCol) : NO_CANDIDATE;
+    }
+
+    // move down a heap element until its children are not smaller (min heap of sorting keys)
+    private static void siftDown(long[] heap, int k, int size)
+    {
+        long key = heap[k];
+        int half = size / 2;
+        while (k < half)
+        {
+            int child = 2*k + 1;
+            if (child + 1 < size && heap[child + 1] < heap[child])
+                child++;
+            if (key <= heap[child])
+                break;
+            heap[k] = heap[child];
+            k = child;
+        }
+        heap[k] = key;
+    }
+
+    // get the sorting key of a matrix candidate: decreasing value in the high word, increasing position in the low one
+    private static long getSortKey(float value, int index)
+    {
+        // (adding 0 turns -0 into 0, so both zeros are sorted as equal values)
+        int bits = Float.floatToIntBits(value + 0.0f);
+        // float bits as an ordered int, then reversed
+        int order = ~(bits ^ ((bits >> 31) & 0x7FFFFFFF));
+        return ((long)order << 32) | index;
+    }
 }
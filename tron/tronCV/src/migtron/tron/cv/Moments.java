@@ -0,0 +1,211 @@
+/*
+ *  Copyright (C) 2019 by Migtron Robotics   
+ *  albarral@migtron.com
+ */
+package migtron.tron.cv;
+
+import java.awt.geom.Point2D.Float;
+
+import migtron.tron.math.Ellipse;
+import migtron.tron.math.Vec3f;
+
+/**
+* This class holds the raw spatial moments (up to second order) of a 2D mask.
+* Moments are expressed in the mask's own coordinates (relative to its window).
+* The mass of the mask is the zero order moment (m00).
+* @author albarral
+ */
+
+public class Moments implements Cloneable
+{
+    private long m00;   // mass
+    private long m10;   // sum of x
+    private long m01;   // sum of y
+    private long m20;   // sum of x*x
+    private long m11;   // sum of x*y
+    private long m02;   // sum of y*y
+
+    public Moments()
+    {
+        clear();
+    }
+
+    // create moments from their raw values
+    public Moments(long m00, long m10, long m01, long m20, long m11, long m02)
+    {
+        this.m00 = m00;
+        this.m10 = m10;
+        this.m01 = m01;
+        this.m20 = m20;
+        this.m11 = m11;
+        this.m02 = m02;
+    }
+
+    @Override
+    public Object clone()
+    {
+        try {
+            // all members automatically copied
+            return (Moments)super.clone();
+        }
+        catch (CloneNotSupportedException e) {
+         throw new AssertionError();
+      }
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o)
+            return true;
+
+        if (o == null || getClass() != o.getClass())
+            return false;
+
+        Moments moments = (Moments)o;
+        return (m00 == moments.m00 && m10 == moments.m10 && m01 == moments.m01 &&
+                m20 == moments.m20 && m11 == moments.m11 && m02 == moments.m02);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return java.util.Arrays.hashCode(new long[] {m00, m10, m01, m20, m11, m02});
+    }
+
+    public long getM00() {return m00;};
+    public long getM10() {return m10;};
+    public long getM01() {return m01;};
+    public long getM20() {return m20;};
+    public long getM11() {return m11;};
+    public long getM02() {return m02;};
+    public int getMass() {return (int)m00;};
+
+    public void clear()
+    {
+        m00 = m10 = m01 = 0;
+        m20 = m11 = m02 = 0;
+    }
+
+    // compute the moments of a single channel byte buffer holding a w x h matrix (row major)
+    // all non zero elements are accounted as mask pixels
+    public void compute(byte[] buffer, int w, int h)
+    {
+        clear();
+        int i = 0;
+        // for each row
+        for (int y=0; y<h; y++)
+        {
+            // row accumulators (avoid multiplying by y for each pixel)
+            long n = 0;
+            long sx = 0;
+            long sxx = 0;
+            // walk row
+            for (int x=0; x<w; x++, i++)
+            {
+                // if pixel informed update row sums
+                if (buffer[i] != 0)
+                {
+                    n++;
+                    sx += x;
+                    sxx += x*x;
+                }
+            }
+            // add row contribution to moments
+            if (n != 0)
+            {
+                m00 += n;
+                m10 += sx;
+                m01 += n*y;
+                m20 += sxx;
+                m11 += sx*y;
+                m02 += n*y*y;
+            }
+        }
+    }
+
+    // add the given moments to these ones (both must share the same origin)
+    public void add(Moments moments)
+    {
+        m00 += moments.m00;
+        m10 += moments.m10;
+        m01 += moments.m01;
+        m20 += moments.m20;
+        m11 += moments.m11;
+        m02 += moments.m02;
+    }
+
+    // subtract the given moments from these ones (both must share the same origin)
+    public void subtract(Moments moments)
+    {
+        m00 -= moments.m00;
+        m10 -= moments.m10;
+        m01 -= moments.m01;
+        m20 -= moments.m20;
+        m11 -= moments.m11;
+        m02 -= moments.m02;
+    }
+
+    // express the moments in a new origin, placed at (-dx, -dy) from the present one (so x' = x + dx, y' = y + dy)
+    public void translate(int dx, int dy)
+    {
+        m20 += 2*dx*m10 + (long)dx*dx*m00;
+        m02 += 2*dy*m01 + (long)dy*dy*m00;
+        m11 += dx*m01 + dy*m10 + (long)dx*dy*m00;
+        m10 += dx*m00;
+        m01 += dy*m00;
+    }
+
+    // add a horizontal run of pixels to the moments (row y, columns from start to end excluded)
+    // the run sums are computed in closed form
+    public void addRun(int y, int start, int end)
+    {
+        long n = end - start;
+        if (n <= 0)
+            return;
+        long sx = (start + end - 1) * n / 2;
+        long sxx = sumSquares(end - 1) - sumSquares(start - 1);
+        m00 += n;
+        m10 += sx;
+        m01 += n*y;
+        m20 += sxx;
+        m11 += sx*y;
+        m02 += n*y*y;
+    }
+
+    // sum of the squares of all integers from 0 to k
+    private static long sumSquares(long k)
+    {
+        return (k <= 0) ? 0 : k*(k+1)*(2*k+1)/6;
+    }
+
+    // compute the elliptic representation of these moments, placing it at the given window origin
+    public Ellipse computeEllipse(int x0, int y0)
+    {
+        // centroid (inside mask window)
+        float xo = (float)m10/m00;
+        float yo = (float)m01/m00;
+        // central moments
+        double mu20 = m20 - xo*m10;
+        double mu02 = m02 - yo*m01;
+        double mu11 = m11 - xo*m01;
+
+        if (m00 != 0)
+        {
+            // compute centroid and covariances from moments
+            return new Ellipse(new Float(xo+x0, yo+y0),
+                    new Vec3f((float)(mu20/m00), (float)(mu02/m00), (float)(mu11/m00)));
+        }
+        // if empty mask, null size ellipse returned
+        else
+            return new Ellipse();
+    }
+
+    @Override
+    public String toString()
+    {
+        String desc = "Moments [m00 = " + String.valueOf(m00) + ", m10 = " + String.valueOf(m10) + ", m01 = " + String.valueOf(m01) +
+                ", m20 = " + String.valueOf(m20) + ", m11 = " + String.valueOf(m11) + ", m02 = " + String.valueOf(m02) + "]";
+        return desc;
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ *  Copyright (C) 2019 by Migtron Robotics   
+ *  albarral@migtron.com
+ */
+package migtron.tron.cv;
+
+import java.util.Arrays;
+
+import migtron.tron.math.Ellipse;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+/**
+* This class represents a 2D mask in run length encoded form.
+* The mask pixels are stored as horizontal runs, each defined by a row and a span of columns (end excluded), in image coordinates.
+* Runs are kept sorted by row and column, so logical operations are proportional to the number of runs instead of the mask area.
+* It holds a window to locate the mask in the image, with the same semantics as the Mask class.
+* @author albarral
+ */
+
+public class RLEMask implements Cloneable
+{
+    private static final int RUN_SIZE = 3;    // elements per run (y, xstart, xend)
+    private int[] runs;     // consecutive (y, xstart, xend) triplets
+    private int numRuns;    // number of stored runs
+    private Rect window;   // mask window in image
+
+    public RLEMask(Rect window)
+    {
+        runs = new int[RUN_SIZE*8];
+        numRuns = 0;
+        this.window = window.clone();
+    }
+
+    // create run length version of given mask
+    public RLEMask(Mask mask)
+    {
+        this(mask.getWindow());
+        Mat mat = mask.getMat();
+        int w = mat.width();
+        int h = mat.height();
+        byte[] buffer = new byte[w*h];
+        mat.get(0, 0, buffer);
+
+        int i = 0;
+        // for each row
+        for (int y=0; y<h; y++)
+        {
+            int start = -1;
+            // walk row detecting runs
+            for (int x=0; x<w; x++, i++)
+            {
+                if (buffer[i] != 0)
+                {
+                    if (start < 0)
+                        start = x;
+                }
+                else if (start >= 0)
+                {
+                    addRun(window.y+y, window.x+start, window.x+x);
+                    start = -1;
+                }
+            }
+            // close run reaching the row end
+            if (start >= 0)
+                addRun(window.y+y, window.x+start, window.x+w);
+        }
+    }
+
+    @Override
+    public Object clone()
+    {
+        try {
+            RLEMask cloned = (RLEMask)super.clone();
+            cloned.runs = Arrays.copyOf(runs, runs.length);
+            cloned.window = window.clone();
+            return cloned;
+        }
+        catch (CloneNotSupportedException e) {
+         throw new AssertionError();
+      }
+    }
+
+    public Rect getWindow() {return window;};
+    public int getNumRuns() {return numRuns;};
+    // get the row of the specified run
+    public int getRunY(int run) {return runs[RUN_SIZE*run];};
+    // get the first column of the specified run
+    public int getRunStart(int run) {return runs[RUN_SIZE*run+1];};
+    // get the column after the end of the specified run
+    public int getRunEnd(int run) {return runs[RUN_SIZE*run+2];};
+
+    // convert to standard mask form
+    public Mask toMask()
+    {
+        int w = window.width;
+        int h = window.height;
+        byte[] buffer = new byte[w*h];
+        for (int r=0; r<numRuns; r++)
+        {
+            int k = RUN_SIZE*r;
+            int offset = (runs[k]-window.y)*w - window.x;
+            Arrays.fill(buffer, offset + runs[k+1], offset + runs[k+2], (byte)255);
+        }
+        Mat mat = new Mat(h, w, CvType.CV_8UC1);
+        if (buffer.length != 0)
+            mat.put(0, 0, buffer);
+        return Mask.createCropped(mat, window);
+    }
+
+    public void clear()
+    {
+        numRuns = 0;
+        window = new Rect(0,0,0,0);
+    }
+
+    // compute mask area
+    public int computeMass()
+    {
+        int mass = 0;
+        for (int r=0; r<numRuns; r++)
+            mass += runs[RUN_SIZE*r+2] - runs[RUN_SIZE*r+1];
+        return mass;
+    }
+
+    // compute the spatial moments of this mask (in window coordinates)
+    public Moments computeMoments()
+    {
+        Moments moments = new Moments();
+        for (int r=0; r<numRuns; r++)
+        {
+            int k = RUN_SIZE*r;
+            moments.addRun(runs[k]-window.y, runs[k+1]-window.x, runs[k+2]-window.x);
+        }
+        return moments;
+    }
+
+    // compute the elliptic representation a this mask
+    public Ellipse computeEllipse()
+    {
+        return computeMoments().computeEllipse(window.x, window.y);
+    }
+
+    // merge this mask with another one
+    public void merge(RLEMask mask)
+    {
+        combine(mask, true);
+        window = Window.getUnion(window, mask.window);
+    }
+
+    // intersect this mask with another one
+    public void intersect(RLEMask mask)
+    {
+        combine(mask, false);
+        window = Window.getIntersection(window, mask.window);
+    }
+
+    // logical and of this mask with another one, resulting in a union size mask
+    public void and(RLEMask mask)
+    {
+        combine(mask, false);
+        window = Window.getUnion(window, mask.window);
+    }
+
+    // combine the runs of this mask with those of another mask (logical or / logical and)
+    // both run lists are walked row by row in a single pass
+    private void combine(RLEMask mask, boolean bor)
+    {
+        int[] runs1 = runs;
+        int num1 = numRuns;
+        int[] runs2 = mask.runs;
+        int num2 = mask.numRuns;
+        runs = new int[RUN_SIZE*Math.max(8, num1+num2)];
+        numRuns = 0;
+
+        int i = 0, j = 0;
+        while (i < num1 || j < num2)
+        {
+            int y1 = (i < num1) ? runs1[RUN_SIZE*i] : Integer.MAX_VALUE;
+            int y2 = (j < num2) ? runs2[RUN_SIZE*j] : Integer.MAX_VALUE;
+            int y = Math.min(y1, y2);
+            // find the runs of this row in both lists
+            int end1 = i;
+            while (end1 < num1 && runs1[RUN_SIZE*end1] == y)
+                end1++;
+            int end2 = j;
+            while (end2 < num2 && runs2[RUN_SIZE*end2] == y)
+                end2++;
+
+            if (bor)
+                orRow(y, runs1, i, end1, runs2, j, end2);
+            else
+                andRow(y, runs1, i, end1, runs2, j, end2);
+            i = end1;
+            j = end2;
+        }
+    }
+
+    // union of the runs of a row (runs [i, end1) of the first list and [j, end2) of the second)
+    private void orRow(int y, int[] runs1, int i, int end1, int[] runs2, int j, int end2)
+    {
+        int start = 0, end = -1;
+        boolean open = false;
+        while (i < end1 || j < end2)
+        {
+            // take the run that starts first
+            int[] src;
+            int k;
+            if (j >= end2 || (i < end1 && runs1[RUN_SIZE*i+1] <= runs2[RUN_SIZE*j+1]))
+            {
+                src = runs1;
+                k = RUN_SIZE*i++;
+            }
+            else
+            {
+                src = runs2;
+                k = RUN_SIZE*j++;
+            }
+            // extend the open run if touching, otherwise store it and open a new one
+            if (open && src[k+1] <= end)
+                end = Math.max(end, src[k+2]);
+            else
+            {
+                if (open)
+                    addRun(y, start, end);
+                start = src[k+1];
+                end = src[k+2];
+                open = true;
+            }
+        }
+        if (open)
+            addRun(y, start, end);
+    }
+
+    // intersection of the runs of a row (runs [i, end1) of the first list and [j, end2) of the second)
+    private void andRow(int y, int[] runs1, int i, int end1, int[] runs2, int j, int end2)
+    {
+        while (i < end1 && j < end2)
+        {
+            int k1 = RUN_SIZE*i;
+            int k2 = RUN_SIZE*j;
+            int start = Math.max(runs1[k1+1], runs2[k2+1]);
+            int end = Math.min(runs1[k1+2], runs2[k2+2]);
+            if (start < end)
+                addRun(y, start, end);
+            // advance the run that finishes first
+            if (runs1[k1+2] < runs2[k2+2])
+                i++;
+            else
+                j++;
+        }
+    }
+
+    // append a run to the list (runs must be added in order)
+    private void addRun(int y, int start, int end)
+    {
+        if (RUN_SIZE*(numRuns+1) > runs.length)
+            runs = Arrays.copyOf(runs, 2*runs.length);
+        int k = RUN_SIZE*numRuns++;
+        runs[k] = y;
+        runs[k+1] = start;
+        runs[k+2] = end;
+    }
+
+    @Override
+    public String toString()
+    {
+        String desc = "RLEMask [window = (" + String.valueOf(window.x) + "," + String.valueOf(window.y) + "," + String.valueOf(window.width) + "," + String.valueOf(window.height) + "), runs = " + String.valueOf(numRuns) + "]";
+        return desc;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ *  Copyright (C) 2019 by Migtron Robotics   
+ *  albarral@migtron.com
+ */
+package migtron.tron.cv;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+/**
+* This class represents the summed area table (integral image) of a single channel matrix.
+* Once built, the sum of any rectangular region of the matrix is obtained in constant time.
+* Byte matrices (masks) are accounted as binary (each non zero element counts 1), short matrices (samples) by their values.
+* @author albarral
+ */
+
+public class SummedArea
+{
+    private int w;      // matrix width
+    private int h;      // matrix height
+    private int[] table;    // (w+1) x (h+1) table, each element holds the sum of all matrix elements above and left of it
+
+    public SummedArea(Mat mat)
+    {
+        compute(mat);
+    }
+
+    // table of a w x h matrix given by its unsigned short values (row major)
+    public SummedArea(short[] values, int w, int h)
+    {
+        compute(values, w, h);
+    }
+
+    public int getWidth() {return w;};
+    public int getHeight() {return h;};
+
+    // build the table from the given matrix (byte or unsigned short single channel)
+    public void compute(Mat mat)
+    {
+        setSize(mat.width(), mat.height());
+        int[] values = readValues(mat);
+        int stride = w+1;
+        // first table row and column are left at 0
+        for (int y=0; y<h; y++)
+        {
+            int rowSum = 0;
+            int k = (y+1)*stride + 1;
+            int i = y*w;
+            for (int x=0; x<w; x++, k++, i++)
+            {
+                rowSum += values[i];
+                table[k] = table[k - stride] + rowSum;
+            }
+        }
+    }
+
+    // build the table from the unsigned short values of a w x h matrix (row major)
+    public void compute(short[] values, int w, int h)
+    {
+        setSize(w, h);
+        int stride = w+1;
+        // first table row and column are left at 0
+        for (int y=0; y<h; y++)
+        {
+            int rowSum = 0;
+            int k = (y+1)*stride + 1;
+            int i = y*w;
+            for (int x=0; x<w; x++, k++, i++)
+            {
+                rowSum += values[i] & 0xFFFF;
+                table[k] = table[k - stride] + rowSum;
+            }
+        }
+    }
+
+    // set the matrix size (reallocating the table if needed)
+    private void setSize(int w, int h)
+    {
+        this.w = w;
+        this.h = h;
+        int size = (w+1)*(h+1);
+        if (table == null || table.length != size)
+            table = new int[size];
+    }
+
+    // get the sum of the matrix elements inside the given region (clipped to the matrix limits)
+    public int getSum(int x, int y, int width, int height)
+    {
+        int x0 = Math.max(x, 0);
+        int y0 = Math.max(y, 0);
+        int x1 = Math.min(x + width, w);
+        int y1 = Math.min(y + height, h);
+        if (x0 >= x1 || y0 >= y1)
+            return 0;
+
+        int stride = w+1;
+        return table[y1*stride + x1] - table[y0*stride + x1] - table[y1*stride + x0] + table[y0*stride + x0];
+    }
+
+    // get the sum of the matrix elements inside the given window (clipped to the matrix limits)
+    public int getSum(Rect window)
+    {
+        return getSum(window.x, window.y, window.width, window.height);
+    }
+
+    // read matrix values as ints (binary for byte matrices)
+    private int[] readValues(Mat mat)
+    {
+        int size = w*h;
+        int[] values = new int[size];
+        if (size == 0)
+            return values;
+
+        if (mat.depth() == CvType.CV_8U)
+        {
+            byte[] buffer = new byte[size];
+            mat.get(0, 0, buffer);
+            for (int i=0; i<size; i++)
+                values[i] = (buffer[i] != 0) ? 1 : 0;
+        }
+        else if (mat.depth() == CvType.CV_16U)
+        {
+            short[] buffer = new short[size];
+            mat.get(0, 0, buffer);
+            for (int i=0; i<size; i++)
+                values[i] = buffer[i] & 0xFFFF;
+        }
+        else
+            throw new java.lang.IllegalArgumentException("SummedArea only supports byte or unsigned short matrices");
+        return values;
+    }
+}
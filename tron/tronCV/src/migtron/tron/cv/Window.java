@@ -12,6 +12,8 @@ import org.opencv.core.Rect;
 
 /**
  * Utility class to perform mathematical operations on OpenCV windows 
+ * The basic operations are also offered as primitive kernels, which work directly on the rect fields 
+ * and write their result in a caller provided rect (no intermediate java rectangles are created).
  * @author albarral
  */
 public class Window 
@@ -32,11 +34,11 @@ public class Window
     public static Rect addPoint(Rect window, Point point)
     {
         // if point out of window, enlarge window
-        if (!window.contains(new org.opencv.core.Point(point.x, point.y)))
+        if (!contains(window, point.x, point.y))
         {
-            Rectangle rectangle = rectangleCV2Java(window);
-            rectangle.add(point);
-            return rectangleJava2CV(rectangle);            
+            Rect result = window.clone();
+            expand(result, point.x, point.y);
+            return result;
         }
         // otherwise do nothing
         else
@@ -46,17 +48,17 @@ public class Window
     // get the rectangle resulting from the intersection of two windows
     public static Rect getIntersection(Rect window1, Rect window2)
     {
-        Rectangle rect1 = rectangleCV2Java(window1);
-        Rectangle rect2 = rectangleCV2Java(window2);        
-        return rectangleJava2CV(rect1.intersection(rect2));        
+        Rect result = new Rect();
+        intersect(window1, window2, result);
+        return result;
     }
 
     // get the rectangle resulting from the union of two windows
     public static Rect getUnion(Rect window1, Rect window2)
     {
-        Rectangle rect1 = rectangleCV2Java(window1);
-        Rectangle rect2 = rectangleCV2Java(window2);        
-        return rectangleJava2CV(rect1.union(rect2));        
+        Rect result = new Rect();
+        unite(window1, window2, result);
+        return result;
     }
 
     // translate given window the specified x and y displacement
@@ -65,6 +67,78 @@ public class Window
         return new Rect(window.x + dx, window.y + dy, window.width, window.height);        
     }
 
+    // check if a window is empty (no pixels)
+    public static boolean isEmpty(Rect window)
+    {
+        return (window.width <= 0 || window.height <= 0);
+    }
+
+    // check if a point is inside a window
+    public static boolean contains(Rect window, int x, int y)
+    {
+        return (x >= window.x && x < window.x + window.width && y >= window.y && y < window.y + window.height);
+    }
+
+    // kernel: intersection of two windows written in result (which can be one of them)
+    // if the windows don't overlap the result has non positive width or height
+    public static void intersect(Rect window1, Rect window2, Rect result)
+    {
+        int x = Math.max(window1.x, window2.x);
+        int y = Math.max(window1.y, window2.y);
+        int right = Math.min(window1.x + window1.width, window2.x + window2.width);
+        int bottom = Math.min(window1.y + window1.height, window2.y + window2.height);
+        set(result, x, y, right - x, bottom - y);
+    }
+
+    // kernel: union of two windows written in result (which can be one of them)
+    // empty windows are ignored (if both are empty the result is the second one)
+    public static void unite(Rect window1, Rect window2, Rect result)
+    {
+        if (isEmpty(window1))
+            set(result, window2.x, window2.y, window2.width, window2.height);
+        else if (isEmpty(window2))
+            set(result, window1.x, window1.y, window1.width, window1.height);
+        else
+        {
+            int x = Math.min(window1.x, window2.x);
+            int y = Math.min(window1.y, window2.y);
+            int right = Math.max(window1.x + window1.width, window2.x + window2.width);
+            int bottom = Math.max(window1.y + window1.height, window2.y + window2.height);
+            set(result, x, y, right - x, bottom - y);
+        }
+    }
+
+    // kernel: enlarge window (in place) to include the given point
+    // an empty window becomes the point's single pixel window
+    public static void expand(Rect window, int x, int y)
+    {
+        if (isEmpty(window))
+            set(window, x, y, 1, 1);
+        else if (!contains(window, x, y))
+        {
+            int x0 = Math.min(window.x, x);
+            int y0 = Math.min(window.y, y);
+            int right = Math.max(window.x + window.width, x + 1);
+            int bottom = Math.max(window.y + window.height, y + 1);
+            set(window, x0, y0, right - x0, bottom - y0);
+        }
+    }
+
+    // kernel: translation of a window written in result (which can be the same window)
+    public static void translate(Rect window, int dx, int dy, Rect result)
+    {
+        set(result, window.x + dx, window.y + dy, window.width, window.height);
+    }
+
+    // kernel: set the window fields
+    public static void set(Rect window, int x, int y, int width, int height)
+    {
+        window.x = x;
+        window.y = y;
+        window.width = width;
+        window.height = height;
+    }
+
     // translate given window to new top left point
     public static Rect translateTo(Rect window, Point point)
     {
@@ -83,11 +157,15 @@ public class Window
         return new Rect(window.x - (int)newOrigin.x, window.y - (int)newOrigin.y, window.width, window.height);        
     }
     
-    // compute the overlaped area of two windows
+    // compute the overlaped area of two windows (0 if they don't overlap)
     public static int getOverlapArea(Rect window1, Rect window2)
     {
-        Rect intersection = getIntersection(window1, window2);
-        return (intersection.width * intersection.height);
+        int width = Math.min(window1.x + window1.width, window2.x + window2.width) - Math.max(window1.x, window2.x);
+        int height = Math.min(window1.y + window1.height, window2.y + window2.height) - Math.max(window1.y, window2.y);
+        if (width > 0 && height > 0)
+            return (width * height);
+        else
+            return 0;
     }
 
     // compute the fraction of window1 overlapped by window2
@@ -112,69 +190,31 @@ public class Window
             return 0.0f;
     }
 
-    // compute the minimum distance between the vertices of two windows
+    // compute the minimum distance between two windows (0 if they overlap)
+    // windows overlapped in one axis are separated by their gap in the other axis (0 if touching), 
+    // otherwise by the distance between their closest vertices (in java form)
     public static float getSeparation(Rect window1, Rect window2)
     {
-        // get intersection of windows
-        Rectangle rect1 = rectangleCV2Java(window1);
-        Rectangle rect2 = rectangleCV2Java(window2);        
-        Rectangle intersection = rect1.intersection(rect2);
+        // gaps between both windows in each axis (negative if they overlap in that axis)
+        int gapX = Math.max(window2.x - (window1.x + window1.width), window1.x - (window2.x + window2.width));
+        int gapY = Math.max(window2.y - (window1.y + window1.height), window1.y - (window2.y + window2.height));
 
         // case 1: windows overlap -> separation 0
-        if (intersection.width > 0)  
+        if (gapX < 0 && gapY < 0)  
             return 0.0f;
+        // case 2A: windows overlap vertically (in x plane) -> separation = y distance
+        else if (gapX <= 0 && gapY >= 0)
+            return gapY;
+        // case 2B: windows overlap horizontally (in y plane) -> separation = x distance
+        else if (gapY <= 0)
+            return gapX;
+        // case 3: windows don't overlap in any plane -> separation = minimum distance between vertices
         else
-        {
-            float sep;
-            Rectangle union = rect1.union(rect2);
-
-            // case 2A: windows overlap vertically (in x plane) -> separation = y distance
-            if (union.width < window1.width + window2.width)
-            {
-                int bottom1, top2;
-                // window1 is over window2
-                if (window2.y > window1.y)
-                {
-                    bottom1 = window1.y + window1.height;
-                    top2 = window2.y;
-                }
-                // window2 is over window1
-                else
-                {
-                    bottom1 = window2.y + window2.height;
-                    top2 = window1.y;
-                }
-                sep = top2 - bottom1; 
-            }
-            // case 2B: windows overlap horizontally (in y plane) -> separation = x distance
-            else if (union.height < window1.height + window2.height)
-            {
-                int rightBorder1, leftBorder2;
-                // window2 comes after window1
-                if (window2.x > window1.x)
-                {
-                    rightBorder1 = window1.x + window1.width;
-                    leftBorder2 = window2.x;
-                }
-                // window1 comes after window2
-                else
-                {
-                    rightBorder1 = window2.x + window2.width;
-                    leftBorder2 = window1.x;
-                }
-                sep = leftBorder2 - rightBorder1; 
-            }        
-            // case 3: windows don't overlap in any plane -> separation = minimum distance between vertices
-            else
-            {        
-                List<Point> vertices1 = getVertices(rect1);
-                List<Point> vertices2 = getVertices(rect2);
-
-                // compute minimum distance between both windows vertices
-                sep = (float)Math.sqrt(getMinSqrDistanceBetweenPoints(vertices1, vertices2));
-            }
-            
-            return sep;
+        {        
+            // the closest vertices are one pixel further than the gaps (java form vertices)
+            long dx = gapX + 1;
+            long dy = gapY + 1;
+            return (float)Math.sqrt((float)(dx*dx + dy*dy));
         }
     }
 
@@ -192,22 +232,4 @@ public class Window
 
         return vertices;
     }
-    
-    // get the minimum distance between two lists of points
-    private static float getMinSqrDistanceBetweenPoints(List<Point> points1, List<Point> points2)
-    {
-        Float minimum = null;
-        float sqrDist;
-        for (Point point1 : points1)
-            for (Point point2 : points2)
-            {
-                sqrDist = (float)point1.distanceSq(point2);
-                if (minimum == null || sqrDist < minimum)
-                    minimum = sqrDist;            
-            }
-
-        return minimum;
-    }
-
-
 }
@@ -0,0 +1,334 @@
+/*
+ *  Copyright (C) 2019 by Migtron Robotics   
+ *  albarral@migtron.com
+ */
+package migtron.tron.cv;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import org.opencv.core.Rect;
+
+/**
+* Spatial index of items located by windows (typically bodies), based on a uniform grid hash.
+* The image plane is split in square cells, and each item is registered in all the cells touched by its window.
+* Queries only visit the cells around the query window, and results are exactly the ones given by Window.getOverlapArea() and Window.getSeparation().
+* Items are tracked by identity (not by equals). Items can be moved incrementally (only their changed cells are updated). The index is not thread safe.
+* @author albarral
+ */
+
+public class WindowIndex<T>
+{
+    // indexed item
+    private static class Entry<T>
+    {
+        T item;
+        Rect window;    // item window
+        int seq;        // insertion sequence (used to order equally separated items)
+        int cx0, cy0, cx1, cy1;    // range of cells covered by the window (both ends included)
+        int stamp;      // last query that visited this entry (avoids repeated results)
+        float separation;   // separation found by the last query
+    }
+
+    private static final int MAX_MARGIN = 1 << 30;  // query margin limit (wider than any image)
+    private int cellSize;   // side of the grid cells
+    private HashMap<Long, List<Entry<T>>> cells;  // grid cells (only occupied ones are kept)
+    private IdentityHashMap<T, Entry<T>> entries;     // entries of indexed items (by identity, as item equality may be by value)
+    private int seq;    // insertion counter
+    private int stamp;  // query counter
+
+    public WindowIndex(int cellSize)
+    {
+        // safety check
+        if (cellSize <= 0)
+            throw new java.lang.IllegalArgumentException("WindowIndex cell size must be positive");
+
+        this.cellSize = cellSize;
+        cells = new HashMap<>();
+        entries = new IdentityHashMap<>();
+        seq = 0;
+        stamp = 0;
+    }
+
+    public int getCellSize() {return cellSize;};
+    public int size() {return entries.size();};
+    public boolean contains(T item) {return entries.containsKey(item);};
+
+    // get the indexed window of an item (null if not indexed)
+    public Rect getWindow(T item)
+    {
+        Entry<T> entry = entries.get(item);
+        return (entry != null) ? entry.window : null;
+    }
+
+    // add an item with the given window, or move it if already indexed
+    public void put(T item, Rect window)
+    {
+        Entry<T> entry = entries.get(item);
+        if (entry == null)
+        {
+            entry = new Entry<>();
+            entry.item = item;
+            entry.window = window.clone();
+            entry.seq = seq++;
+            setCells(entry);
+            addToCells(entry);
+            entries.put(item, entry);
+        }
+        else
+            move(entry, window);
+    }
+
+    // remove an item from the index
+    // returns true if removed, false if not indexed
+    public boolean remove(T item)
+    {
+        Entry<T> entry = entries.remove(item);
+        if (entry == null)
+            return false;
+        removeFromCells(entry);
+        return true;
+    }
+
+    public void clear()
+    {
+        cells.clear();
+        entries.clear();
+    }
+
+    // get the items whose windows overlap the given window
+    public List<T> getOverlapped(Rect window)
+    {
+        List<T> listItems = new ArrayList<>();
+        for (Entry<T> entry : collect(window, 0, null))
+        {
+            if (Window.getOverlapArea(window, entry.window) > 0)
+                listItems.add(entry.item);
+        }
+        return listItems;
+    }
+
+    // get the items separated from the given window by no more than the given distance (sorted by separation)
+    public List<T> getNeighbours(Rect window, float distance)
+    {
+        return toItems(getSeparated(window, distance, null));
+    }
+
+    // get the items separated from the given item by no more than the given distance (sorted by separation, item itself excluded)
+    public List<T> getNeighbours(T item, float distance)
+    {
+        Entry<T> entry = entries.get(item);
+        if (entry == null)
+            return new ArrayList<>();
+        return toItems(getSeparated(entry.window, distance, entry));
+    }
+
+    // get the k items nearest to the given window (sorted by separation)
+    public List<T> getNearest(Rect window, int k)
+    {
+        return toItems(getNearest(window, k, null));
+    }
+
+    // get the k items nearest to the given item (sorted by separation, item itself excluded)
+    public List<T> getNearest(T item, int k)
+    {
+        Entry<T> entry = entries.get(item);
+        if (entry == null)
+            return new ArrayList<>();
+        return toItems(getNearest(entry.window, k, entry));
+    }
+
+    // get the entries separated from a window by no more than the given distance (sorted by separation)
+    private List<Entry<T>> getSeparated(Rect window, float distance, Entry<T> excluded)
+    {
+        // the separation is never smaller than the gap between windows in any axis, so one more pixel of margin covers all candidates
+        int margin = (distance > 0) ? (int)Math.min(Math.ceil(distance) + 1, MAX_MARGIN) : 1;
+        List<Entry<T>> listSeparated = new ArrayList<>();
+        for (Entry<T> entry : collect(window, margin, excluded))
+        {
+            entry.separation = Window.getSeparation(window, entry.window);
+            if (entry.separation <= distance)
+                listSeparated.add(entry);
+        }
+        sortBySeparation(listSeparated);
+        return listSeparated;
+    }
+
+    // get the k entries nearest to a window (sorted by separation)
+    // the search distance is doubled until k entries are found or the whole index is covered
+    private List<Entry<T>> getNearest(Rect window, int k, Entry<T> excluded)
+    {
+        int available = entries.size() - ((excluded != null) ? 1 : 0);
+        k = Math.min(k, available);
+        if (k <= 0)
+            return new ArrayList<>();
+
+        float distance = cellSize;
+        while (true)
+        {
+            List<Entry<T>> listSeparated = getSeparated(window, distance, excluded);
+            // all entries closer than the found ones are already included
+            if (listSeparated.size() >= k)
+                return listSeparated.subList(0, k);
+            distance *= 2;
+        }
+    }
+
+    // collect the entries registered in the cells touched by the given window (enlarged by a margin)
+    private List<Entry<T>> collect(Rect window, int margin, Entry<T> excluded)
+    {
+        stamp++;
+        if (excluded != null)
+            excluded.stamp = stamp;
+
+        int cx0 = cellOf(window.x - margin);
+        int cy0 = cellOf(window.y - margin);
+        int cx1 = cellOf(window.x + Math.max(window.width, 1) - 1 + margin);
+        int cy1 = cellOf(window.y + Math.max(window.height, 1) - 1 + margin);
+
+        List<Entry<T>> listEntries = new ArrayList<>();
+        // if the query covers more cells than the occupied ones, walk the occupied cells directly
+        if ((long)(cx1 - cx0 + 1) * (cy1 - cy0 + 1) > cells.size())
+        {
+            for (List<Entry<T>> cell : cells.values())
+                collectCell(cell, cx0, cy0, cx1, cy1, listEntries);
+        }
+        else
+        {
+            for (int cy=cy0; cy<=cy1; cy++)
+                for (int cx=cx0; cx<=cx1; cx++)
+                {
+                    List<Entry<T>> cell = cells.get(key(cx, cy));
+                    if (cell != null)
+                        collectCell(cell, cx0, cy0, cx1, cy1, listEntries);
+                }
+        }
+        return listEntries;
+    }
+
+    // add the not yet visited entries of a cell whose windows touch the given cells range
+    private void collectCell(List<Entry<T>> cell, int cx0, int cy0, int cx1, int cy1, List<Entry<T>> listEntries)
+    {
+        for (Entry<T> entry : cell)
+        {
+            if (entry.stamp != stamp && entry.cx0 <= cx1 && entry.cx1 >= cx0 && entry.cy0 <= cy1 && entry.cy1 >= cy0)
+            {
+                entry.stamp = stamp;
+                listEntries.add(entry);
+            }
+        }
+    }
+
+    // move an entry to a new window (cells only updated if the covered range changes)
+    private void move(Entry<T> entry, Rect window)
+    {
+        int cx0 = entry.cx0, cy0 = entry.cy0, cx1 = entry.cx1, cy1 = entry.cy1;
+        Window.set(entry.window, window.x, window.y, window.width, window.height);
+        setCells(entry);
+        if (entry.cx0 != cx0 || entry.cy0 != cy0 || entry.cx1 != cx1 || entry.cy1 != cy1)
+        {
+            // remove from the old cells not covered anymore, and add to the newly covered ones
+            for (int cy=cy0; cy<=cy1; cy++)
+                for (int cx=cx0; cx<=cx1; cx++)
+                    if (!covers(entry, cx, cy))
+                        removeFromCell(entry, cx, cy);
+            for (int cy=entry.cy0; cy<=entry.cy1; cy++)
+                for (int cx=entry.cx0; cx<=entry.cx1; cx++)
+                    if (cx < cx0 || cx > cx1 || cy < cy0 || cy > cy1)
+                        cells.computeIfAbsent(key(cx, cy), k -> new ArrayList<>()).add(entry);
+        }
+    }
+
+    // compute the range of cells covered by an entry's window (empty windows take the cell of their origin)
+    private void setCells(Entry<T> entry)
+    {
+        Rect window = entry.window;
+        entry.cx0 = cellOf(window.x);
+        entry.cy0 = cellOf(window.y);
+        entry.cx1 = cellOf(window.x + Math.max(window.width, 1) - 1);
+        entry.cy1 = cellOf(window.y + Math.max(window.height, 1) - 1);
+    }
+
+    private boolean covers(Entry<T> entry, int cx, int cy)
+    {
+        return (cx >= entry.cx0 && cx <= entry.cx1 && cy >= entry.cy0 && cy <= entry.cy1);
+    }
+
+    private void addToCells(Entry<T> entry)
+    {
+        for (int cy=entry.cy0; cy<=entry.cy1; cy++)
+            for (int cx=entry.cx0; cx<=entry.cx1; cx++)
+                cells.computeIfAbsent(key(cx, cy), k -> new ArrayList<>()).add(entry);
+    }
+
+    private void removeFromCells(Entry<T> entry)
+    {
+        for (int cy=entry.cy0; cy<=entry.cy1; cy++)
+            for (int cx=entry.cx0; cx<=entry.cx1; cx++)
+                removeFromCell(entry, cx, cy);
+    }
+
+    // remove an entry from a cell (empty cells are discarded)
+    private void removeFromCell(Entry<T> entry, int cx, int cy)
+    {
+        Long key = key(cx, cy);
+        List<Entry<T>> cell = cells.get(key);
+        if (cell != null)
+        {
+            // identity search (entries are never duplicated)
+            for (int i=0; i<cell.size(); i++)
+            {
+                if (cell.get(i) == entry)
+                {
+                    // order inside cells is irrelevant, so the last entry fills the gap
+                    int last = cell.size() - 1;
+                    cell.set(i, cell.get(last));
+                    cell.remove(last);
+                    break;
+                }
+            }
+            if (cell.isEmpty())
+                cells.remove(key);
+        }
+    }
+
+    // sort entries by separation (equal separations kept in insertion order)
+    private void sortBySeparation(List<Entry<T>> listEntries)
+    {
+        Collections.sort(listEntries, (entry1, entry2) ->
+        {
+            int result = Float.compare(entry1.separation, entry2.separation);
+            return (result != 0) ? result : Integer.compare(entry1.seq, entry2.seq);
+        });
+    }
+
+    private List<T> toItems(List<Entry<T>> listEntries)
+    {
+        List<T> listItems = new ArrayList<>(listEntries.size());
+        for (Entry<T> entry : listEntries)
+            listItems.add(entry.item);
+        return listItems;
+    }
+
+    // get the cell index of a coordinate
+    private int cellOf(int coordinate)
+    {
+        return Math.floorDiv(coordinate, cellSize);
+    }
+
+    // get the hash key of a cell
+    private static Long key(int cx, int cy)
+    {
+        return ((long)cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+
+    @Override
+    public String toString()
+    {
+        String desc = "WindowIndex [cell size = " + cellSize + ", items = " + entries.size() + ", occupied cells = " + cells.size() + "]";
+        return desc;
+    }
+}
@@ -5,69 +5,100 @@
 package migtron.tron.cv.grid;
 
 import java.awt.Point;
-import migtron.tron.cv.AverageCV;
+import java.util.Arrays;
 import migtron.tron.cv.Mask;
-import migtron.tron.math.Average3f;
 import migtron.tron.math.Vec3f;
 import migtron.tron.math.Vec3i;
 
-import org.opencv.core.Core;
 import org.opencv.core.CvType;
 import org.opencv.core.Mat;
-import org.opencv.core.MatOfInt;
-import org.opencv.core.MatOfPoint3f;
-import org.opencv.core.Point3;
-import org.opencv.core.Scalar;
+import org.opencv.core.Rect;
 
 /**
-* Extended SampleGrid used for color samplings. 
-* It uses a matrix to store the color of each node.
-* A node's color is the average of all the color samples that fall in that node.
+* Extended SampleGrid used for color samplings.
+* It stores the color sums of each node (next to the node samples), held in a java array so node accesses need no native calls.
+* A node's color is the average of all the color samples that fall in that node. The sums and colors matrices are only built when requested (and then only updated in the changed nodes).
+* Storing sums makes merges exact (nodes weighted by their samples) and cheap (a single matrix addition),
+* and the sums of all nodes are kept updated with each change, so the global color is obtained in constant time.
+* Sums are stored with float precision, which is exact for integer colors while node samples are under their 65535 limit.
+* Samples added to a saturated node scale its sums to the capped samples, so its color stays the average of all its samples (then only approximate).
 * @author albarral
  */
 
 public class ColorGrid extends SampleGrid implements Cloneable
 {
-    protected Mat matColor;   // RGB color matrix (float precision)
+    protected float[] sums;   // node RGB color sums (row major, 3 values per node)
+    private float[] colors;   // node RGB colors (row major, 3 values per node), computed from the sums on request
+    private float[] heldColors;   // RGB colors held by empty nodes (set by getLocalColor(), used as node colors until the nodes get samples)
+    private GridView sumsView;     // RGB color sums matrix view (float precision), synced on request
+    private GridView colorsView;   // RGB color matrix view (float precision), computed and synced on request
+    private Vec3f focusSums;      // RGB color sums in the focused node
     private Vec3f focusColor;     // RGB color in the focused node
+    private double[] colorSums;   // sums of all node colors (RGB)
     private final int TYPE = CvType.CV_32FC3;  // float 3 channel matrix
 
     public ColorGrid(int repW, int repH, float reductionFactor)
     {
         super(repW, repH, reductionFactor);
-        // create grid sized matrix to store the node colors
-        matColor = Mat.zeros(h, w, TYPE);    
+        // create grid sized array to store the node sums
+        sums = new float[3*w*h];
+        colors = new float[3*w*h];
+        heldColors = new float[3*w*h];
+        sumsView = new GridView(w, h, TYPE);
+        colorsView = new GridView(w, h, TYPE);
+        focusSums = new Vec3f();
         focusColor = new Vec3f();
-    }    
+        colorSums = new double[3];
+    }
 
     @Override
     public Object clone()
     {
         ColorGrid cloned = (ColorGrid)super.clone();
-        cloned.matColor = matColor.clone();
+        cloned.sums = sums.clone();
+        // the clone creates its matrices on request
+        cloned.colors = new float[3*w*h];
+        cloned.heldColors = heldColors.clone();
+        cloned.sumsView = new GridView(w, h, TYPE);
+        cloned.colorsView = new GridView(w, h, TYPE);
+        cloned.focusSums = (Vec3f)focusSums.clone();
         cloned.focusColor = (Vec3f)focusColor.clone();
+        cloned.colorSums = colorSums.clone();
         return cloned;
     }
 
-    public Mat getColorMatrix() {return matColor;}    
+    // get the sums matrix (a view of the node sums, to be used for reading)
+    public Mat getSumsMatrix()
+    {
+        return sumsView.getMat(sums);
+    }
+
     // get the color of the focused node
     public Vec3f getFocusColor() {return focusColor;}
-    
-    // set grid focus to a represented matrix position 
+
+    // get the colors matrix (the average color of each node, to be used for reading)
+    // it's recomputed from the sums in the nodes changed since the last request
+    public Mat getColorMatrix()
+    {
+        if (!colorsView.isUpdated())
+            updateColors(colorsView.getChangedWindow());
+        return colorsView.getMat(colors);
+    }
+
+    // set grid focus to a represented matrix position
     // it internally gets the color of the focused node
     // returns true if focus inside limits, false otherwise
     @Override
     public boolean focus(int x, int y)
-    {   
+    {
         boolean bok = super.focus(x, y);
-        
-        if (bok)
-            matColor.get(focus.y, focus.x, focusColor.data);        
 
+        if (bok)
+            loadFocusSums();
         return bok;
     }
 
-    // set grid focus to a represented matrix position 
+    // set grid focus to a represented matrix position
     // it internally gets the color of the focused node
     // returns true if focus inside limits, false otherwise
     @Override
@@ -75,89 +106,352 @@ public class ColorGrid extends SampleGrid implements Cloneable
     {
         return focus(point.x, point.y);
     }
-    
+
     // add a new color sample to the focused node
-    // the average node color is updated with the given sample
+    // the node color sums are updated with the given sample
     public void addColorSample(Vec3i color)
     {
-        // set the node's average color with the new sample
-        focusColor = Average3f.computeAverage(focusColor, focusSamples, new Vec3f(color));
-        matColor.put(focus.y, focus.x, focusColor.data);        
-        // and update the node samples number
-        addSample();
+        addColorSample(color.data[0], color.data[1], color.data[2]);
+    }
+
+    // add a new color sample (given by its rgb components) to the focused node
+    public void addColorSample(int r, int g, int b)
+    {
+        focusSums.data[0] += r;
+        focusSums.data[1] += g;
+        focusSums.data[2] += b;
+        colorSums[0] += r;
+        colorSums[1] += g;
+        colorSums[2] += b;
+        // the sums are written before the samples update (so they get scaled if the node saturates)
+        storeFocusSums();
+        super.addSample();
+        loadFocusSums();
+    }
+
+    // add a new sample to the focused node (with the node's present color)
+    @Override
+    public void addSample()
+    {
+        for (int i=0; i<3; i++)
+        {
+            focusSums.data[i] += focusColor.data[i];
+            colorSums[i] += focusColor.data[i];
+        }
+        storeFocusSums();
+        super.addSample();
+        loadFocusSums();
+    }
+
+    // add a color sample for each pixel of the given mask (located in represented matrix coordinates), taking the colors from the given rgb image
+    // all pixels are accumulated in per node sums in a single pass, and the node sums, samples and sampled window are written once at the end
+    public void addColorSamples(Mat image, Mask mask)
+    {
+        // safety check
+        if (image.type() != CvType.CV_8UC3)
+            throw new java.lang.IllegalArgumentException("ColorGrid samples must be taken from an RGB byte image");
+
+        Rect region = getSampledRegion(mask, image);
+        if (region == null)
+            return;
+        Rect nodes = getNodesWindow(region);
+        int size = nodes.width*nodes.height;
+        int[] counts = new int[size];
+        long[] newSums = new long[3*size];
+        byte[] colors = new byte[3*region.width*region.height];
+        image.submat(region).get(0, 0, colors);
+        scanPixels(mask, region, nodes, colors, counts, newSums);
+
+        // add the new sums to the nodes
+        int k = 0;
+        for (int y=nodes.y; y<nodes.y+nodes.height; y++)
+        {
+            int node = 3*(y*w + nodes.x);
+            for (int i=0; i<3*nodes.width; i++, k++, node++)
+            {
+                sums[node] += newSums[k];
+                colorSums[i % 3] += newSums[k];
+            }
+        }
+        invalidateSums(nodes);
+        // and update the node samples
+        addNodeSamples(nodes, counts);
+        // refresh the focused node
+        loadFocusSums();
     }
 
     // get the grid's local color, the average color of the node's neighbourhood
+    // the focused node takes this color (keeping its samples). An empty node holds it as its color until it gets samples.
     public Vec3f getLocalColor()
     {
-        MatOfPoint3f colors = new MatOfPoint3f(matColor.submat(focusWindow));
-        MatOfInt samples = new MatOfInt(matSamples.submat(focusWindow));
-        
-        Point3 average = AverageCV.compute3DWeightedAverage(colors.toArray(), samples.toArray());
-        Vec3f color = new Vec3f((float)average.x, (float)average.y, (float)average.z);
-        matColor.put(focus.y, focus.x, color.data);        
+        double[] windowSums = new double[3];
+        long windowSamples = 0;
+        for (int y=focusWindow.y; y<focusWindow.y+focusWindow.height; y++)
+            for (int x=focusWindow.x; x<focusWindow.x+focusWindow.width; x++)
+            {
+                int node = y*w + x;
+                windowSamples += samples[node] & 0xFFFF;
+                for (int i=0; i<3; i++)
+                    windowSums[i] += sums[3*node+i];
+            }
+        Vec3f color = new Vec3f();
+        if (windowSamples > 0)
+            color = new Vec3f((float)(windowSums[0] / windowSamples), (float)(windowSums[1] / windowSamples), (float)(windowSums[2] / windowSamples));
+
+        // empty nodes just hold the color (their sums remain empty)
+        if (focusSamples == 0)
+            System.arraycopy(color.data, 0, heldColors, 3*(focus.y*w + focus.x), 3);
+        // replace the node sums with the ones of the local color
+        for (int i=0; i<3; i++)
+        {
+            float nodeSum = color.data[i] * (focusSamples & 0xFFFF);
+            colorSums[i] += nodeSum - focusSums.data[i];
+            focusSums.data[i] = nodeSum;
+        }
+        storeFocusSums();
         return color;
-    }    
-    
-    // get the grid's global color, the average color of all grid nodes
+    }
+
+    // compute the local colors of all nodes at once (the average color of each node's neighbourhood, as given by getLocalColor(), but without changing the nodes)
+    // it uses separable box filters on the node sums and samples, so its cost doesn't depend on the neighbourhood radius
+    // returns the local colors in row major order (3 values per node, 0 for neighbourhoods without samples)
+    public float[] computeLocalColors()
+    {
+        int radius = getRadius();
+        // 4 channels per node: rgb sums and samples
+        double[] rowSums = new double[4*w*h];
+        double[] windowSums = new double[4*w*h];
+
+        // horizontal pass: sums of the row windows of each node (from prefix sums)
+        double[] prefix = new double[4*(w+1)];
+        for (int y=0; y<h; y++)
+        {
+            for (int x=0; x<w; x++)
+            {
+                int node = y*w + x;
+                int k = 4*x;
+                prefix[k+4] = prefix[k] + sums[3*node];
+                prefix[k+5] = prefix[k+1] + sums[3*node+1];
+                prefix[k+6] = prefix[k+2] + sums[3*node+2];
+                prefix[k+7] = prefix[k+3] + (samples[node] & 0xFFFF);
+            }
+            for (int x=0; x<w; x++)
+            {
+                int start = 4*Math.max(x - radius, 0);
+                int end = 4*(Math.min(x + radius, w - 1) + 1);
+                int k = 4*(y*w + x);
+                for (int c=0; c<4; c++)
+                    rowSums[k+c] = prefix[end+c] - prefix[start+c];
+            }
+        }
+
+        // vertical pass: sums of the column windows of the row sums
+        prefix = new double[4*(h+1)];
+        for (int x=0; x<w; x++)
+        {
+            for (int y=0; y<h; y++)
+            {
+                int k = 4*y;
+                int node = 4*(y*w + x);
+                for (int c=0; c<4; c++)
+                    prefix[k+4+c] = prefix[k+c] + rowSums[node+c];
+            }
+            for (int y=0; y<h; y++)
+            {
+                int start = 4*Math.max(y - radius, 0);
+                int end = 4*(Math.min(y + radius, h - 1) + 1);
+                int k = 4*(y*w + x);
+                for (int c=0; c<4; c++)
+                    windowSums[k+c] = prefix[end+c] - prefix[start+c];
+            }
+        }
+
+        // local colors: window sums divided by window samples
+        float[] localColors = new float[3*w*h];
+        for (int node=0; node<w*h; node++)
+        {
+            double windowSamples = windowSums[4*node+3];
+            if (windowSamples > 0)
+                for (int i=0; i<3; i++)
+                    localColors[3*node+i] = (float)(windowSums[4*node+i] / windowSamples);
+        }
+        return localColors;
+    }
+
+    // get the grid's global color, the average color of all grid nodes (weighted by their samples)
+    // it's directly obtained from the running color sums (no grid scan)
     public Vec3f getGlobalColor()
     {
-        MatOfPoint3f colors = new MatOfPoint3f(matColor.submat(sampledWindow));
-        MatOfInt samples = new MatOfInt(matSamples.submat(sampledWindow));
-        
-        Point3 average = AverageCV.compute3DWeightedAverage(colors.toArray(), samples.toArray());
-        return new Vec3f((float)average.x, (float)average.y, (float)average.z);
-    }    
+        if (totalSamples == 0)
+            return new Vec3f();
+        return new Vec3f((float)(colorSums[0] / totalSamples), (float)(colorSums[1] / totalSamples), (float)(colorSums[2] / totalSamples));
+    }
 
     /**
-     * Merge this color grid with another one (of the same size). 
-     * It merges both color matrices, averaging the coincident color nodes. It also merges the internal sample grids. Only done if both grids have the same size.
+     * Merge this color grid with another one (of the same size).
+     * It adds both sums matrices, so coincident nodes get the average of all their samples. It also merges the internal sample grids. Only done if both grids have the same size.
      * @return true if merge done, false otherwise
      */
     public boolean merge(ColorGrid colorGrid)
     {
-        // compute intersection mask of both sample grids
-        Mask maskIntersection = getSamplesMask();
-        maskIntersection.intersect(colorGrid.getSamplesMask());
+        // skip if grids have different sizes
+        if (w != colorGrid.w || h != colorGrid.h)
+            return false;
+
+        // add the other grid sums in its sampled window
+        Rect window = colorGrid.sampledWindow;
+        for (int y=window.y; y<window.y+window.height; y++)
+        {
+            int node = 3*(y*w + window.x);
+            for (int i=0; i<3*window.width; i++, node++)
+                sums[node] += colorGrid.sums[node];
+        }
+        for (int i=0; i<3; i++)
+            colorSums[i] += colorGrid.colorSums[i];
+        invalidateSums(window);
+        // then merge sample grids (after the sums, so they get scaled in saturated nodes)
+        super.merge(colorGrid);
+        loadFocusSums();
+        return true;
+    }
+
+    // merge with another color grid (used for merges of generic grid lists)
+    @Override
+    boolean mergeGrid(SampleGrid sampleGrid)
+    {
+        return merge((ColorGrid)sampleGrid);
+    }
 
-        // merge sample grids 
-        if (super.merge(colorGrid))
+    // set this grid as the reduction of the given finer grid (of double resolution)
+    // each node takes the samples and color sums of its 2x2 block of finer nodes (held colors are not reduced, as in a directly sampled grid)
+    void reduce(ColorGrid finer)
+    {
+        Arrays.fill(sums, 0.0f);
+        Arrays.fill(heldColors, 0.0f);
+        Rect window = finer.sampledWindow;
+        for (int y=window.y; y<window.y+window.height; y++)
         {
-            // add both color matrices (using roi on union window) 
-            // note: the new sampled window is the union window
-            Mat mat1 = matColor.submat(sampledWindow);
-            Mat mat2 = colorGrid.matColor.submat(sampledWindow);
-            Core.add(mat1, mat2, mat1);            
-            
-            // compute the average in intersecting nodes (using roi on intersection window)
-            // the intersection mask is used to only affect intersecting nodes
-            Mat mat3 = matColor.submat(maskIntersection.getWindow());
-            Mat mat4 = Mat.zeros(mat3.size(), mat3.type());
-            
-            mat3.copyTo(mat4, maskIntersection.getMat());
-            Core.multiply(mat4, new Scalar(0.5, 0.5, 0.5), mat4);
-            mat4.copyTo(mat3, maskIntersection.getMat());
-            return true;
+            int row = (y/2)*w;
+            for (int x=window.x; x<window.x+window.width; x++)
+            {
+                int node = 3*(row + x/2);
+                int finerNode = 3*(y*finer.w + x);
+                for (int i=0; i<3; i++)
+                    sums[node+i] += finer.sums[finerNode+i];
+            }
         }
-        else
-            return false;
+        // then reduce sample grids (after the sums, so they get scaled in saturated nodes)
+        super.reduce(finer);
+        System.arraycopy(finer.colorSums, 0, colorSums, 0, 3);
+        invalidateSums();
+        loadFocusSums();
+    }
+
+    // scale the sums of a saturated node (so its color remains the average of all its samples)
+    @Override
+    protected void scaleNode(int node, float factor)
+    {
+        for (int i=3*node; i<3*node+3; i++)
+            sums[i] *= factor;
     }
-    
+
     // clear the color grid
     @Override
     public void clear()
     {
         super.clear();
-        if (!matColor.empty())            
-           matColor.setTo(new Scalar(0.0));
+        Arrays.fill(sums, 0.0f);
+        Arrays.fill(heldColors, 0.0f);
+        invalidateSums();
+        focusSums = new Vec3f();
         focusColor = new Vec3f();
+        Arrays.fill(colorSums, 0.0);
+    }
+
+    // read the focused node sums (and update the focused color)
+    private void loadFocusSums()
+    {
+        int node = 3*(focus.y*w + focus.x);
+        for (int i=0; i<3; i++)
+            focusSums.data[i] = sums[node+i];
+        updateFocusColor();
+    }
+
+    // write the focused node sums (and update the focused color)
+    private void storeFocusSums()
+    {
+        int node = 3*(focus.y*w + focus.x);
+        for (int i=0; i<3; i++)
+            sums[node+i] = focusSums.data[i];
+        updateFocusColor();
+        sumsView.invalidate(focus.x, focus.y);
+        colorsView.invalidate(focus.x, focus.y);
+    }
+
+    // discard the sums views (sums and colors matrices), must be called after each sums change
+    private void invalidateSums()
+    {
+        sumsView.invalidate();
+        colorsView.invalidate();
+    }
+
+    // discard the sums views in a window of changed nodes
+    private void invalidateSums(Rect window)
+    {
+        sumsView.invalidate(window);
+        colorsView.invalidate(window);
+    }
+
+    // the colors also depend on the node samples
+    @Override
+    protected void invalidateSamples()
+    {
+        super.invalidateSamples();
+        colorsView.invalidate();
+    }
+
+    @Override
+    protected void invalidateSamples(Rect window)
+    {
+        super.invalidateSamples(window);
+        colorsView.invalidate(window);
+    }
+
+    @Override
+    protected void invalidateSamples(int x, int y)
+    {
+        super.invalidateSamples(x, y);
+        colorsView.invalidate(x, y);
+    }
+
+    // compute the focused node color from its sums
+    private void updateFocusColor()
+    {
+        float samples = focusSamples & 0xFFFF;
+        int node = 3*(focus.y*w + focus.x);
+        for (int i=0; i<3; i++)
+            focusColor.data[i] = (samples > 0) ? focusSums.data[i] / samples : heldColors[node+i];
+    }
+
+    // compute the node colors of the given window from the sums
+    private void updateColors(Rect window)
+    {
+        for (int y=window.y; y<window.y+window.height; y++)
+        {
+            int node = y*w + window.x;
+            for (int x=0; x<window.width; x++, node++)
+            {
+                int n = samples[node] & 0xFFFF;
+                for (int i=3*node; i<3*node+3; i++)
+                    colors[i] = (n > 0) ? sums[i] / n : heldColors[i];
+            }
+        }
     }
 
     @Override
     public String toString()
     {
-        String desc = "ColorGrid [ matColor:\n" + matColor.dump() + "\n" + super.toString() + "\n]";
+        String desc = "ColorGrid [ matColor:\n" + getColorMatrix().dump() + "\n" + super.toString() + "\n]";
         return desc;
     }
 }
-							 
\ No newline at end of file
@@ -0,0 +1,114 @@
+/*
+ *  Copyright (C) 2019 by Migtron Robotics   
+ *  albarral@migtron.com
+ */
+package migtron.tron.cv.grid;
+
+import migtron.tron.cv.Mask;
+
+import org.opencv.core.Mat;
+
+/**
+* Multi resolution set of color grids representing the same matrix.
+* Level 0 is the finest grid (with the given reduction factor), and each further level halves the resolution of the previous one.
+* Samples are only taken at the finest level, and coarser levels are derived from it by summing blocks of 2x2 nodes.
+* Every level is a ColorGrid (equal to one sampled directly with its reduction factor), so all grid queries can be done at any level.
+* Coarser levels are derived when requested after a change. Samples must be added through the pyramid (or update() called after changing the finest level directly).
+* @author albarral
+ */
+
+public class ColorGridPyramid implements Cloneable
+{
+    private ColorGrid[] levels;     // color grids (from finest to coarsest)
+    private boolean bupdated;       // true if coarser levels are derived from the present finest level
+
+    public ColorGridPyramid(int repW, int repH, float reductionFactor, int numLevels)
+    {
+        // safety check
+        if (numLevels <= 0)
+            throw new java.lang.IllegalArgumentException("ColorGridPyramid needs at least one level");
+
+        levels = new ColorGrid[numLevels];
+        // halving the factor keeps the coarser nodes aligned with 2x2 blocks of finer nodes
+        float factor = reductionFactor;
+        for (int i=0; i<numLevels; i++)
+        {
+            levels[i] = new ColorGrid(repW, repH, factor);
+            factor /= 2;
+        }
+        bupdated = true;
+    }
+
+    @Override
+    public Object clone()
+    {
+        try {
+            ColorGridPyramid cloned = (ColorGridPyramid)super.clone();
+            cloned.levels = new ColorGrid[levels.length];
+            for (int i=0; i<levels.length; i++)
+                cloned.levels[i] = (ColorGrid)levels[i].clone();
+            return cloned;
+        }
+        catch (CloneNotSupportedException e) {
+         throw new AssertionError();
+      }
+    }
+
+    public int getNumLevels() {return levels.length;};
+    // get the finest level grid (where samples are taken)
+    public ColorGrid getFinestLevel() {return levels[0];};
+
+    // get the grid of the given level (coarser levels are derived if needed)
+    public ColorGrid getLevel(int level)
+    {
+        if (level > 0 && !bupdated)
+            update();
+        return levels[level];
+    }
+
+    // add a color sample for each pixel of the given mask (located in represented matrix coordinates), taking the colors from the given rgb image
+    // the pixels are only read once (by the finest level)
+    public void addColorSamples(Mat image, Mask mask)
+    {
+        levels[0].addColorSamples(image, mask);
+        bupdated = false;
+    }
+
+    // merge this pyramid with another one (of the same dimensions)
+    // returns true if merge done, false otherwise
+    public boolean merge(ColorGridPyramid pyramid)
+    {
+        if (levels.length != pyramid.levels.length)
+            return false;
+
+        if (levels[0].merge(pyramid.levels[0]))
+        {
+            bupdated = false;
+            return true;
+        }
+        else
+            return false;
+    }
+
+    // derive the coarser levels from the finest one
+    public void update()
+    {
+        for (int i=1; i<levels.length; i++)
+            levels[i].reduce(levels[i-1]);
+        bupdated = true;
+    }
+
+    public void clear()
+    {
+        for (ColorGrid colorGrid : levels)
+            colorGrid.clear();
+        bupdated = true;
+    }
+
+    @Override
+    public String toString()
+    {
+        String desc = "ColorGridPyramid [levels = " + levels.length + ", finest level = " + levels[0].toString() + "]";
+        return desc;
+    }
+}
@@ -6,67 +6,47 @@ package migtron.tron.cv.grid;
 
 import java.awt.Point;
 
-import migtron.tron.math.Vec2i;
-
-import org.opencv.core.CvType;
-import org.opencv.core.Mat;
 import org.opencv.core.Rect;
 
 /**
 * Utility class to handle grids. 
 * A grid is a reduced representation of an underlying matrix. It's composed by nodes, each representing a specific matrix region.
 * The grid size results from applying a specified reduction factor to the represented matrix size. (the reduction is applied separately to each dimension)
-* The grid uses an internal map to quickly map matrix coordinates to grid ones..
+* The grid uses internal maps to quickly map matrix coordinates to grid ones. As the mapping is separable, a lookup table is kept for each axis.
+* The grid geometry (size, mapping tables and default neighbourhood windows) is immutable and shared by all grids representing matrices of the same size.
 * @author albarral
  */
 
 public class Grid extends Matrix implements Cloneable
 {
-    private int repW;  // width of represented matrix
-    private int repH;  // height of represented matrix
-    private float reductionFactor; // reduction factor (applied to each dimension)
-    private Mat mapCoordinates;   // mapping of matrix to grid coordinates (int precision)
+    private final GridGeometry geometry;  // shared grid geometry (represented size, reduction factor and mapping tables)
 
     public Grid(int repW, int repH, float reductionFactor)
     {
-        super((int)Math.ceil(repW*reductionFactor), (int)Math.ceil(repH*reductionFactor));
+        this(GridGeometry.get(repW, repH, reductionFactor));
+    }    
 
-        // safety check
-        if (reductionFactor <= 0f || reductionFactor >= 1f)
-            throw new java.lang.IllegalArgumentException("Grid reduction factor must be in the (0, 1) range");
-        
-        this.repW = repW;
-        this.repH = repH;
-        this.reductionFactor = reductionFactor;        
-        // define mapping of matrix to grid coordinates
-        mapCoordinates = new Mat(repH, repW, CvType.CV_32SC2);    
-        defineMapping();
+    private Grid(GridGeometry geometry)
+    {
+        super(geometry.w, geometry.h, geometry.neighbourhood);
+        this.geometry = geometry;
     }    
         
-    @Override
-    public Object clone()
-    {
-        Grid cloned = (Grid)super.clone();
-        cloned.mapCoordinates = mapCoordinates.clone();
-        return cloned;
-    }
-    
-    public int getRepresentedWidth() {return repW;};
-    public int getRepresentedHeight() {return repH;};
-    public float getReductionFactor() {return reductionFactor;};
+    public int getRepresentedWidth() {return geometry.repW;};
+    public int getRepresentedHeight() {return geometry.repH;};
+    public float getReductionFactor() {return geometry.reductionFactor;};
+    GridGeometry getGeometry() {return geometry;};
         
-    // get the node representing the given matrix position    
-    protected Vec2i getNodeMapping(int x, int y)
+    // check if the given matrix position is inside the represented matrix
+    protected boolean isRepresented(int x, int y)
     {
-        if (x < repW && y < repH)
-        {
-            Vec2i node = new Vec2i();                
-            mapCoordinates.get(y, x, node.data);
-            return node;
-        }
-        else
-            return null;        
+        return (x >= 0 && x < geometry.repW && y >= 0 && y < geometry.repH);
     }
+
+    // get the node column representing the given matrix column (position must be represented)
+    protected int getNodeX(int x) {return geometry.mapX[x];};
+    // get the node row representing the given matrix row (position must be represented)
+    protected int getNodeY(int y) {return geometry.mapY[y];};
             
     // set focus to the represented matrix position 
     // it maps the given position to a grid node
@@ -74,11 +54,9 @@ public class Grid extends Matrix implements Cloneable
     @Override
     public boolean focus(int x, int y)
     {    
-        // get equivalent node
-        Vec2i node = getNodeMapping(x, y);
-        // if found, move focus to it
-        if (node != null)
-            return super.focus(node.getX(), node.getY());
+        // if represented, move focus to the equivalent node
+        if (isRepresented(x, y))
+            return super.focus(geometry.mapX[x], geometry.mapY[y]);
         else
             return false;
     }
@@ -99,13 +77,15 @@ public class Grid extends Matrix implements Cloneable
         limitRepresentedWindow(window);
 
         // translate the image window to a grid window            
-        // get tl node
-        Vec2i node1 = getNodeMapping(window.x, window.y);
-        // get br node
-        org.opencv.core.Point br = window.br();
-        Vec2i node2 = getNodeMapping((int)br.x, (int)br.y);                                
-        if (node1 != null && node2 != null)
-            return new Rect(node1.getX(), node1.getY(), node2.getX()-node1.getX(), node2.getY()-node1.getY());        
+        // map tl and br corners
+        int x2 = window.x + window.width;
+        int y2 = window.y + window.height;
+        if (isRepresented(window.x, window.y) && isRepresented(x2, y2))
+        {
+            int[] mapX = geometry.mapX;
+            int[] mapY = geometry.mapY;
+            return new Rect(mapX[window.x], mapY[window.y], mapX[x2]-mapX[window.x], mapY[y2]-mapY[window.y]);        
+        }
         else
             return null;
     }
@@ -113,42 +93,22 @@ public class Grid extends Matrix implements Cloneable
     private void limitRepresentedWindow(Rect window)
     {
         // check & correct window limits for safe grid computation
-        if (window.br().x > repW-1)
+        if (window.br().x > geometry.repW-1)
         {
-            int excess = (int)window.br().x - repW +1 ;
+            int excess = (int)window.br().x - geometry.repW +1 ;
             window.width -= excess;
         }
-        if (window.br().y > repH-1)
+        if (window.br().y > geometry.repH-1)
         {
-            int excess = (int)window.br().y - repH +1 ;
+            int excess = (int)window.br().y - geometry.repH +1 ;
             window.height -= excess;
         }        
     }
     
-    // internal map creation for mapping matrix coordinates to grid ones
-    private void defineMapping()
-    {        
-        int x2, y2;
-        // walk rows
-        for (int y=0; y<repH; y++)
-        {
-            // avoid rounding (in order not to place nodes in borders)
-            y2 = (int)(y*reductionFactor);                    
-            // walk columns
-            for (int x=0; x<repW; x++)
-            {    
-                // avoid rounding (in order not to place nodes in borders)
-                x2 = (int)(x*reductionFactor);    
-                Vec2i vector = new Vec2i(x2, y2);                
-                mapCoordinates.put(y, x, vector.data);
-            }
-        }        
-    }
-    
     @Override
     public String toString()
     {
-        String desc = "Grid [rep wxh = " + String.valueOf(repW) + "x" + String.valueOf(repH) + ", reduction factor = " + String.valueOf(reductionFactor) + "]";
+        String desc = "Grid [rep wxh = " + String.valueOf(geometry.repW) + "x" + String.valueOf(geometry.repH) + ", reduction factor = " + String.valueOf(geometry.reductionFactor) + "]";
         return desc;
     }
     
@@ -0,0 +1,99 @@
+/*
+ *  Copyright (C) 2019 by Migtron Robotics   
+ *  albarral@migtron.com
+ */
+package migtron.tron.cv.grid;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+* Immutable geometry of grids: grid size, mapping tables and default neighbourhood windows, all derived from the represented size and the reduction factor.
+* Geometries are cached by those parameters, so all grids (and their clones) representing matrices of the same size share a single instance.
+* The cache is thread safe.
+* @author albarral
+ */
+
+final class GridGeometry
+{
+    // cache key
+    private static class Key
+    {
+        private final int repW;
+        private final int repH;
+        private final int factorBits;
+
+        Key(int repW, int repH, float reductionFactor)
+        {
+            this.repW = repW;
+            this.repH = repH;
+            this.factorBits = Float.floatToIntBits(reductionFactor);
+        }
+
+        @Override
+        public boolean equals(Object object)
+        {
+            if (!(object instanceof Key))
+                return false;
+            Key key = (Key)object;
+            return (repW == key.repW && repH == key.repH && factorBits == key.factorBits);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31*(31*repW + repH) + factorBits;
+        }
+    }
+
+    private static final ConcurrentHashMap<Key, GridGeometry> cache = new ConcurrentHashMap<>();
+    final int repW;     // width of represented matrix
+    final int repH;     // height of represented matrix
+    final float reductionFactor;    // reduction factor (applied to each dimension)
+    final int w;        // grid width
+    final int h;        // grid height
+    final int[] mapX;   // mapping of matrix columns to grid columns
+    final int[] mapY;   // mapping of matrix rows to grid rows
+    final Neighbourhood neighbourhood;  // neighbourhood windows of default radius
+
+    private GridGeometry(int repW, int repH, float reductionFactor)
+    {
+        this.repW = repW;
+        this.repH = repH;
+        this.reductionFactor = reductionFactor;
+        w = (int)Math.ceil(repW*reductionFactor);
+        h = (int)Math.ceil(repH*reductionFactor);
+
+        // safety checks
+        if (w <= 0 || h <= 0)
+            throw new java.lang.IllegalArgumentException("Matrix dimensions must be positive");
+        if (reductionFactor <= 0f || reductionFactor >= 1f)
+            throw new java.lang.IllegalArgumentException("Grid reduction factor must be in the (0, 1) range");
+
+        // define mapping of matrix to grid coordinates
+        // avoid rounding (in order not to place nodes in borders)
+        mapX = new int[repW];
+        mapY = new int[repH];
+        for (int x=0; x<repW; x++)
+            mapX[x] = (int)(x*reductionFactor);
+        for (int y=0; y<repH; y++)
+            mapY[y] = (int)(y*reductionFactor);
+
+        neighbourhood = new Neighbourhood(w, h, 1);
+    }
+
+    // get the geometry for the given parameters (created on first request, then shared)
+    static GridGeometry get(int repW, int repH, float reductionFactor)
+    {
+        Key key = new Key(repW, repH, reductionFactor);
+        GridGeometry geometry = cache.get(key);
+        if (geometry == null)
+        {
+            // invalid parameters throw here (before anything gets cached)
+            geometry = new GridGeometry(repW, repH, reductionFactor);
+            GridGeometry previous = cache.putIfAbsent(key, geometry);
+            if (previous != null)
+                geometry = previous;
+        }
+        return geometry;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ *  Copyright (C) 2019 by Migtron Robotics   
+ *  albarral@migtron.com
+ */
+package migtron.tron.cv.grid;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+* Utility class to merge many grids (of the same size) into a single one.
+* Grids are reduced in a balanced tree of merges, which for long lists runs in parallel (fork-join).
+* The result is the same as merging the grids one by one (merges just add samples and color sums, which are exact for sampled colors).
+* The given grids are never modified, the result is a new grid (with the focus of the first one).
+* @author albarral
+ */
+
+public class GridMerger
+{
+    private static final int PARALLEL_MIN = 16;    // minimum grids for parallel merges
+    private static final int PARALLEL_LEAF = 4;    // grids merged by each parallel task
+
+    // merge all given sample grids into a new one (all of the same class)
+    // returns null if the list is empty
+    public static SampleGrid mergeSampleGrids(List<? extends SampleGrid> grids)
+    {
+        return mergeGrids(grids);
+    }
+
+    // merge all given color grids into a new one
+    // returns null if the list is empty
+    public static ColorGrid mergeColorGrids(List<? extends ColorGrid> grids)
+    {
+        return (ColorGrid)mergeGrids(grids);
+    }
+
+    // merge a list of grids (the dynamic type of the grids decides the merge done)
+    private static SampleGrid mergeGrids(List<? extends SampleGrid> grids)
+    {
+        if (grids.isEmpty())
+            return null;
+
+        // safety check (mixed classes can't be merged, as each class merges its own data)
+        SampleGrid first = grids.get(0);
+        for (SampleGrid grid : grids)
+        {
+            if (grid.w != first.w || grid.h != first.h)
+                throw new java.lang.IllegalArgumentException("GridMerger: all grids must have the same size");
+            if (grid.getClass() != first.getClass())
+                throw new java.lang.IllegalArgumentException("GridMerger: all grids must be of the same class");
+        }
+
+        if (grids.size() >= PARALLEL_MIN)
+            return ForkJoinPool.commonPool().invoke(new MergeTask(grids, 0, grids.size()));
+        else
+            return merge(grids, 0, grids.size());
+    }
+
+    // merge the given range of grids (one by one) into a clone of the first one
+    private static SampleGrid merge(List<? extends SampleGrid> grids, int start, int end)
+    {
+        SampleGrid merged = (SampleGrid)grids.get(start).clone();
+        for (int i=start+1; i<end; i++)
+            merged.mergeGrid(grids.get(i));
+        return merged;
+    }
+
+    // parallel merge of a range of grids (split in halves until small enough)
+    private static class MergeTask extends RecursiveTask<SampleGrid>
+    {
+        private static final long serialVersionUID = 1L;
+        private final List<? extends SampleGrid> grids;
+        private final int start;
+        private final int end;
+
+        MergeTask(List<? extends SampleGrid> grids, int start, int end)
+        {
+            this.grids = grids;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected SampleGrid compute()
+        {
+            if (end - start <= PARALLEL_LEAF)
+                return merge(grids, start, end);
+
+            int middle = (start + end) >>> 1;
+            MergeTask task1 = new MergeTask(grids, start, middle);
+            MergeTask task2 = new MergeTask(grids, middle, end);
+            task1.fork();
+            SampleGrid merged2 = task2.compute();
+            SampleGrid merged1 = task1.join();
+
+            // join both halves (the first one is owned by this task, so it can be modified)
+            merged1.mergeGrid(merged2);
+            return merged1;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ *  Copyright (C) 2019 by Migtron Robotics   
+ *  albarral@migtron.com
+ */
+package migtron.tron.cv.grid;
+
+import migtron.tron.cv.Window;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+/**
+* Matrix view of a grid array (row major, with the channels of the view type).
+* The matrix is created on first request, and later requests only copy the nodes changed since the previous one (the changed window).
+* So small grid changes (like a focused node update) don't copy the whole array to native memory.
+* @author albarral
+ */
+
+final class GridView
+{
+    private final int w;      // grid width
+    private final int h;      // grid height
+    private final int type;   // matrix type
+    private final int channels;   // values per node
+    private Mat mat;          // view matrix (null if not yet created)
+    private final Rect changedWindow;   // nodes changed since the last request (empty if none)
+
+    GridView(int w, int h, int type)
+    {
+        this.w = w;
+        this.h = h;
+        this.type = type;
+        channels = CvType.channels(type);
+        // all nodes pending
+        changedWindow = new Rect(0, 0, w, h);
+    }
+
+    // true if the view has no pending changes
+    boolean isUpdated() {return Window.isEmpty(changedWindow);};
+    // get the nodes changed since the last request
+    Rect getChangedWindow() {return changedWindow;};
+
+    // mark a window of nodes as changed
+    void invalidate(Rect window)
+    {
+        Window.unite(changedWindow, window, changedWindow);
+    }
+
+    // mark a node as changed
+    void invalidate(int x, int y)
+    {
+        Window.expand(changedWindow, x, y);
+    }
+
+    // mark all nodes as changed
+    void invalidate()
+    {
+        Window.set(changedWindow, 0, 0, w, h);
+    }
+
+    // get the view matrix, with its changed nodes copied from the given array
+    Mat getMat(short[] values)
+    {
+        if (!isUpdated())
+        {
+            Rect window = changedWindow;
+            // full rows are contiguous in the array
+            if (window.width == w)
+            {
+                short[] rows = (window.height == h) ? values : java.util.Arrays.copyOfRange(values, window.y*w*channels, (window.y + window.height)*w*channels);
+                getMatrix().put(window.y, 0, rows);
+            }
+            else
+            {
+                short[] windowValues = new short[window.width*window.height*channels];
+                int size = window.width*channels;
+                for (int j=0; j<window.height; j++)
+                    System.arraycopy(values, ((window.y + j)*w + window.x)*channels, windowValues, j*size, size);
+                getMatrix().submat(window).put(0, 0, windowValues);
+            }
+            Window.set(changedWindow, 0, 0, 0, 0);
+        }
+        return getMatrix();
+    }
+
+    // get the view matrix, with its changed nodes copied from the given array
+    Mat getMat(float[] values)
+    {
+        if (!isUpdated())
+        {
+            Rect window = changedWindow;
+            // full rows are contiguous in the array
+            if (window.width == w)
+            {
+                float[] rows = (window.height == h) ? values : java.util.Arrays.copyOfRange(values, window.y*w*channels, (window.y + window.height)*w*channels);
+                getMatrix().put(window.y, 0, rows);
+            }
+            else
+            {
+                float[] windowValues = new float[window.width*window.height*channels];
+                int size = window.width*channels;
+                for (int j=0; j<window.height; j++)
+                    System.arraycopy(values, ((window.y + j)*w + window.x)*channels, windowValues, j*size, size);
+                getMatrix().submat(window).put(0, 0, windowValues);
+            }
+            Window.set(changedWindow, 0, 0, 0, 0);
+        }
+        return getMatrix();
+    }
+
+    // get the view matrix (created on first request)
+    private Mat getMatrix()
+    {
+        if (mat == null)
+            mat = new Mat(h, w, type);
+        return mat;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ *  Copyright (C) 2019 by Migtron Robotics   
+ *  albarral@migtron.com
+ */
+package migtron.tron.cv.grid;
+
+/**
+* Immutable neighbourhood windows of a matrix for a given radius.
+* For each column (and row) it holds the start and size of the neighbourhood window, already limited to the matrix borders.
+* Being immutable, it's shared by all matrices (and clones) of same dimensions and radius.
+* @author albarral
+ */
+
+final class Neighbourhood
+{
+    final int radius;     // radius of neighbourhood windows
+    final int[] xStarts;  // window start for each column
+    final int[] xSizes;   // window width for each column
+    final int[] yStarts;  // window start for each row
+    final int[] ySizes;   // window height for each row
+
+    Neighbourhood(int w, int h, int radius)
+    {
+        // safety check
+        if (radius < 0)
+            throw new java.lang.IllegalArgumentException("Matrix neighbourhood radius can't be negative");
+
+        this.radius = radius;
+        xStarts = new int[w];
+        xSizes = new int[w];
+        yStarts = new int[h];
+        ySizes = new int[h];
+        computeWindows(w, xStarts, xSizes);
+        computeWindows(h, yStarts, ySizes);
+    }
+
+    // compute the windows along a dimension (limited to the dimension borders)
+    private void computeWindows(int size, int[] starts, int[] sizes)
+    {
+        for (int i=0; i<size; i++)
+        {
+            starts[i] = Math.max(i - radius, 0);
+            sizes[i] = Math.min(i + radius, size - 1) - starts[i] + 1;
+        }
+    }
+}
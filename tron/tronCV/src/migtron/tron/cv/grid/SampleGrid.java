@@ -5,50 +5,65 @@
 package migtron.tron.cv.grid;
 
 import java.awt.Point;
+import java.util.Arrays;
 import migtron.tron.cv.Mask;
+import migtron.tron.cv.SummedArea;
 import migtron.tron.cv.Window;
 
-import org.opencv.core.Core;
 import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.core.Rect;
-import org.opencv.core.Scalar;
 
 /**
 * Extended Grid used for matrix samplings. 
 * It has a samples matrix to store the number of samples represented by each node. 
+* The samples are held in a java array (row major), so node accesses need no native calls. The samples matrix is just a view of them, synced on request (only in the changed nodes).
 * It also has a sampled window to track the sampled area of the grid.
+* Samples can be added one by one (focusing each position) or in bulk from a whole mask.
 
 * @author albarral
  */
 
 public class SampleGrid extends Grid implements Cloneable
 {
-    protected Mat matSamples;   // samples matrix (short precision)
+    protected short[] samples;  // node samples (unsigned short values, row major)
+    private GridView samplesView;   // samples matrix view (short precision), synced on request
     protected Rect sampledWindow;   // sampled window (in grid units)
     protected short focusSamples;     // samples in the focused node
+    protected long totalSamples;    // total samples in the grid
+    private SummedArea summedSamples;   // cached summed area table of the samples matrix (null if not yet built)
     private final int TYPE = CvType.CV_16UC1;  // short single channel matrix
+    public static final int MAX_SAMPLES = 65535;    // maximum samples of a node (saturated, as the samples matrix)
 
     public SampleGrid(int repW, int repH, float reductionFactor)
     {
         super(repW, repH, reductionFactor);
-        // create samples matrix
-        matSamples = Mat.zeros(h, w, TYPE);    
+        // create samples array
+        samples = new short[w*h];
+        samplesView = new GridView(w, h, TYPE);
         // create sampled window (negative values for non-existant window)
         sampledWindow = new Rect();    
         focusSamples = 0;
+        totalSamples = 0;
     }    
 
     @Override
     public Object clone()
     {
         SampleGrid cloned = (SampleGrid)super.clone();
-        cloned.matSamples = matSamples.clone();
+        cloned.samples = samples.clone();
+        // the clone creates its samples matrix on request
+        cloned.samplesView = new GridView(w, h, TYPE);
         cloned.sampledWindow = sampledWindow.clone();
+        cloned.summedSamples = null;
         return cloned;
     }
     
-    public Mat getSamplesMatrix() {return matSamples;}
+    // get the samples matrix (a view of the grid samples, to be used for reading)
+    public Mat getSamplesMatrix()
+    {
+        return samplesView.getMat(samples);
+    }
     /**
      * Gets the sampled window 
      * @return the sampledWindow 
@@ -56,20 +71,35 @@ public class SampleGrid extends Grid implements Cloneable
     public Rect getSampledWindow() {return sampledWindow;}
     // get the number of samples of the focused node
     public short getFocusSamples() {return focusSamples;}
+    // get the total number of samples in the grid
+    public long getTotalSamples() {return totalSamples;}
     
+    // get the number of samples inside the given window (in grid units)
+    // the summed area table is built on first request (and after each samples change), so further queries take constant time
+    public int computeSamples(Rect window)
+    {
+        if (summedSamples == null)
+            summedSamples = new SummedArea(samples, w, h);
+        return summedSamples.getSum(window);
+    }
+
     // get mask version of samples matrix
     public Mask getSamplesMask()
     {
         // create destination matrix (mask type)
-        Mat matMask = Mat.zeros(matSamples.size(), CvType.CV_8UC1);
-        // convert samples to mask
-        Mat mat1 = matSamples.submat(sampledWindow);
-        Mat mat2 = matMask.submat(sampledWindow);
-        mat1.convertTo(mat2, CvType.CV_8UC1);
-        // create mask object & binarize it
-        Mask mask = new Mask(matMask, sampledWindow);
-        mask.binarize(1);
-        return mask;
+        Mat matMask = Mat.zeros(h, w, CvType.CV_8UC1);
+        // convert samples in the sampled window to mask values (binarized with threshold 1)
+        if (!Window.isEmpty(sampledWindow))
+        {
+            byte[] values = new byte[sampledWindow.width*sampledWindow.height];
+            int k = 0;
+            for (int y=sampledWindow.y; y<sampledWindow.y+sampledWindow.height; y++)
+                for (int x=sampledWindow.x; x<sampledWindow.x+sampledWindow.width; x++)
+                    values[k++] = ((samples[y*w + x] & 0xFFFF) > 1) ? (byte)255 : 0;
+            matMask.submat(sampledWindow).put(0, 0, values);
+        }
+        // create mask object
+        return new Mask(matMask, sampledWindow);
     }
     
     // set grid focus to a represented matrix position 
@@ -81,11 +111,7 @@ public class SampleGrid extends Grid implements Cloneable
         boolean bok = super.focus(x, y);
         
         if (bok)
-        {
-            short[] data = new short[1];
-            matSamples.get(focus.y, focus.x, data);        
-            focusSamples = data[0];            
-        }
+            focusSamples = samples[focus.y*w + focus.x];
         return bok;
     }
 
@@ -102,9 +128,112 @@ public class SampleGrid extends Grid implements Cloneable
     // it internally updates the sampled window
     public void addSample()
     {
-        short[] data = {++focusSamples};
-        matSamples.put(focus.y, focus.x, data);                
-        sampledWindow = Window.addPoint(sampledWindow, focus);
+        int node = focus.y*w + focus.x;
+        setNodeSamples(node, (focusSamples & 0xFFFF) + 1);
+        focusSamples = samples[node];
+        Window.expand(sampledWindow, focus.x, focus.y);
+        totalSamples++;
+        invalidateSamples(focus.x, focus.y);
+    }
+    
+    // add a sample for each pixel of the given mask (located in represented matrix coordinates)
+    // all pixels are counted in a single pass, and the samples matrix is written once at the end
+    public void addSamples(Mask mask)
+    {
+        Rect region = getSampledRegion(mask, null);
+        if (region == null)
+            return;
+        Rect nodes = getNodesWindow(region);
+        int[] counts = new int[nodes.width*nodes.height];
+        scanPixels(mask, region, nodes, null, counts, null);
+        addNodeSamples(nodes, counts);
+    }
+
+    // get the region of the mask window that can be sampled (inside the represented matrix and the given image if any)
+    // returns null if empty
+    protected Rect getSampledRegion(Mask mask, Mat image)
+    {
+        if (!mask.isValid())
+            return null;
+        Rect region = new Rect(0, 0, getRepresentedWidth(), getRepresentedHeight());
+        Window.intersect(region, mask.getWindow(), region);
+        if (image != null)
+            Window.intersect(region, new Rect(0, 0, image.width(), image.height()), region);
+        return Window.isEmpty(region) ? null : region;
+    }
+
+    // get the window of nodes representing the given region (in grid units)
+    protected Rect getNodesWindow(Rect region)
+    {
+        int x0 = getNodeX(region.x);
+        int y0 = getNodeY(region.y);
+        int x1 = getNodeX(region.x + region.width - 1);
+        int y1 = getNodeY(region.y + region.height - 1);
+        return new Rect(x0, y0, x1 - x0 + 1, y1 - y0 + 1);
+    }
+
+    // count the mask pixels of a region in each node of the given nodes window
+    // if colors are given (rgb values of the region pixels), their sums are also accumulated for each node
+    protected void scanPixels(Mask mask, Rect region, Rect nodes, byte[] colors, int[] counts, long[] colorSums)
+    {
+        // read the mask pixels in the region
+        Rect maskWindow = mask.getWindow();
+        byte[] pixels = new byte[region.width*region.height];
+        mask.getMat().submat(new Rect(region.x - maskWindow.x, region.y - maskWindow.y, region.width, region.height)).get(0, 0, pixels);
+
+        // node columns of the region columns (relative to the nodes window)
+        int[] columns = new int[region.width];
+        for (int i=0; i<region.width; i++)
+            columns[i] = getNodeX(region.x + i) - nodes.x;
+
+        int k = 0;
+        for (int j=0; j<region.height; j++)
+        {
+            int row = (getNodeY(region.y + j) - nodes.y) * nodes.width;
+            for (int i=0; i<region.width; i++, k++)
+            {
+                if (pixels[k] == 0)
+                    continue;
+                int node = row + columns[i];
+                counts[node]++;
+                if (colors != null)
+                {
+                    colorSums[3*node] += colors[3*k] & 0xFF;
+                    colorSums[3*node+1] += colors[3*k+1] & 0xFF;
+                    colorSums[3*node+2] += colors[3*k+2] & 0xFF;
+                }
+            }
+        }
+    }
+
+    // add the given sample counts to the nodes of a nodes window (in bulk)
+    // it updates the sampled window with the touched nodes
+    protected void addNodeSamples(Rect nodes, int[] counts)
+    {
+        int x0 = Integer.MAX_VALUE, y0 = Integer.MAX_VALUE, x1 = -1, y1 = -1;
+        int k = 0;
+        for (int y=nodes.y; y<nodes.y+nodes.height; y++)
+            for (int x=nodes.x; x<nodes.x+nodes.width; x++, k++)
+            {
+                if (counts[k] == 0)
+                    continue;
+                int node = y*w + x;
+                setNodeSamples(node, (samples[node] & 0xFFFF) + counts[k]);
+                totalSamples += counts[k];
+                x0 = Math.min(x0, x);
+                y0 = Math.min(y0, y);
+                x1 = Math.max(x1, x);
+                y1 = Math.max(y1, y);
+            }
+        // skip if no node touched
+        if (x1 < 0)
+            return;
+
+        Rect touched = new Rect(x0, y0, x1 - x0 + 1, y1 - y0 + 1);
+        Window.unite(sampledWindow, touched, sampledWindow);
+        // refresh the focused node samples
+        focusSamples = samples[focus.y*w + focus.x];
+        invalidateSamples(touched);
     }
     
     /**
@@ -115,38 +244,115 @@ public class SampleGrid extends Grid implements Cloneable
     public boolean merge(SampleGrid sampleGrid)
     {
         // skip if grids have different sizes
-        if (!matSamples.size().equals(sampleGrid.matSamples.size()))
+        if (w != sampleGrid.w || h != sampleGrid.h)
             return false;
 
-        // compute union of sampled windows
-        Rect union = Window.getUnion(sampledWindow, sampleGrid.sampledWindow);
-
-        // roi both samples matrices
-        Mat mat1 = matSamples.submat(union);
-        Mat mat2 = sampleGrid.matSamples.submat(union);
+        // add the other grid samples in its sampled window
+        Rect window = sampleGrid.sampledWindow;
+        for (int y=window.y; y<window.y+window.height; y++)
+        {
+            int node = y*w + window.x;
+            for (int x=0; x<window.width; x++, node++)
+                setNodeSamples(node, (samples[node] & 0xFFFF) + (sampleGrid.samples[node] & 0xFFFF));
+        }
 
-        // add both samples matrices (leaving result in this grid)
-        Core.add(mat1, mat2, mat1);
-        // and update sampled window
-        sampledWindow = union;
+        // compute union of sampled windows (updating this grid's sampled window)
+        Window.unite(sampledWindow, sampleGrid.sampledWindow, sampledWindow);
+        totalSamples += sampleGrid.totalSamples;
+        focusSamples = samples[focus.y*w + focus.x];
+        invalidateSamples(window);
         return true;
     }
     
-    // clear sample grid 
-    public void clear()
+    // merge with another grid, overridden by subclasses to merge their own data (used for merges of generic grid lists)
+    boolean mergeGrid(SampleGrid sampleGrid)
     {
-        if (!matSamples.empty())          
+        return merge(sampleGrid);
+    }
+
+    // set this grid as the reduction of the given finer grid (of double resolution)
+    // each node takes the samples of its 2x2 block of finer nodes
+    void reduce(SampleGrid finer)
+    {
+        Arrays.fill(samples, (short)0);
+        Rect window = finer.sampledWindow;
+        if (Window.isEmpty(window))
+            sampledWindow = new Rect();
+        else
         {
-            matSamples.setTo(new Scalar(0.0));
-            sampledWindow = new Rect(); 
-            focusSamples = 0;
+            int x0 = window.x/2;
+            int y0 = window.y/2;
+            sampledWindow = new Rect(x0, y0, (window.x + window.width - 1)/2 - x0 + 1, (window.y + window.height - 1)/2 - y0 + 1);
+            for (int y=sampledWindow.y; y<sampledWindow.y+sampledWindow.height; y++)
+                for (int x=sampledWindow.x; x<sampledWindow.x+sampledWindow.width; x++)
+                {
+                    // the block total is saturated at once (so saturated nodes are scaled with their whole block)
+                    long n = 0;
+                    for (int fy=2*y; fy<Math.min(2*y + 2, finer.h); fy++)
+                        for (int fx=2*x; fx<Math.min(2*x + 2, finer.w); fx++)
+                            n += finer.samples[fy*finer.w + fx] & 0xFFFF;
+                    setNodeSamples(y*w + x, n);
+                }
         }
+        totalSamples = finer.totalSamples;
+        focusSamples = samples[focus.y*w + focus.x];
+        invalidateSamples();
+    }
+
+    // set the samples of a node, saturated to the maximum node samples
+    // saturated nodes get their data scaled to the capped samples (see scaleNode())
+    private void setNodeSamples(int node, long n)
+    {
+        if (n > MAX_SAMPLES)
+        {
+            samples[node] = (short)MAX_SAMPLES;
+            scaleNode(node, (float)((double)MAX_SAMPLES / n));
+        }
+        else
+            samples[node] = (short)n;
+    }
+
+    // scale the data of a saturated node by the given factor (capped samples / real samples), so it stays consistent with the node samples
+    // called after the node's data is updated with the samples being added. Nothing to scale at this level.
+    protected void scaleNode(int node, float factor)
+    {
+    }
+    
+    // clear sample grid 
+    public void clear()
+    {
+        Arrays.fill(samples, (short)0);
+        sampledWindow = new Rect(); 
+        focusSamples = 0;
+        totalSamples = 0;
+        invalidateSamples();
+    }
+
+    // discard the samples views (matrix and summed area table), must be called after each samples change
+    protected void invalidateSamples()
+    {
+        samplesView.invalidate();
+        summedSamples = null;
+    }
+
+    // discard the samples views in a window of changed nodes
+    protected void invalidateSamples(Rect window)
+    {
+        samplesView.invalidate(window);
+        summedSamples = null;
+    }
+
+    // discard the samples views in a changed node
+    protected void invalidateSamples(int x, int y)
+    {
+        samplesView.invalidate(x, y);
+        summedSamples = null;
     }
 
     @Override
     public String toString()
     {
-        String desc = "SampleGrid [ matSamples:\n" + matSamples.dump() + "\nsampled window = " + sampledWindow.toString() + "\n" + super.toString() + "\n]";
+        String desc = "SampleGrid [ matSamples:\n" + getSamplesMatrix().dump() + "\nsampled window = " + sampledWindow.toString() + "\n" + super.toString() + "\n]";
         return desc;
     }
 }
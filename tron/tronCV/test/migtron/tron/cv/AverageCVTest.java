@@ -102,5 +102,47 @@ public class AverageCVTest {
         Point3 result = AverageCV.compute3DWeightedAverage(points, weights);
         Assert.assertEquals(expResult, result);
     }
+
+    /**
+     * Test of computeWeightedAverage method (float buffer), of class AverageCV.
+     */
+    @Test
+    public void testComputeWeightedAverageBuffer() 
+    {
+        System.out.println("computeWeightedAverage (buffer)");
     
+        float[] values = {10, 20, 30,  
+                          40, 50, 60,  
+                          70, 80, 90};
+        int[] weights = {1, 0, 2};
+        double[] expResult = {50, 60, 70};
+
+        double[] result = new double[3];
+        long total = AverageCV.computeWeightedAverage(values, 3, weights, result);
+        Assert.assertEquals(3, total);
+        Assert.assertArrayEquals(expResult, result, 1e-9);
+    }
+
+    /**
+     * Test of computeAverage method (big double buffer, parallel), of class AverageCV.
+     */
+    @Test
+    public void testComputeAverageParallel() 
+    {
+        System.out.println("computeAverage (parallel)");
+    
+        // big buffer of 2 channels, with values that lose precision in plain sums
+        int elements = 1 << 20;
+        double[] values = new double[2*elements];
+        for (int i=0; i<elements; i++)
+        {
+            values[2*i] = 1e8 + 0.1;
+            values[2*i+1] = (i % 2 == 0) ? 1.0 : 3.0;
+        }
+        double[] expResult = {1e8 + 0.1, 2.0};
+
+        double[] result = new double[2];
+        AverageCV.computeAverage(values, 2, result);
+        Assert.assertArrayEquals(expResult, result, 1e-7);
+    }
 }
@@ -0,0 +1,295 @@
+/*
+ *  Copyright (C) 2019 by Migtron Robotics   
+ *  albarral@migtron.com
+ */
+package migtron.tron.cv;
+
+import migtron.tron.draw.BlocksDrawer;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Random;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+/**
+ *
+ * @author albarral
+ */
+public class BitMaskTest
+{
+    private int w;
+    private int h;
+    private BlocksDrawer blocksDrawer;  // blocks drawing utility
+    private Mask mask1;     // top filled mask
+    private Mask mask2;     // right filled mask
+    private Mask mask3;     // random pixels, window not aligned to words and wider than a word (partial last word)
+    private Mask mask4;     // random pixels, window not aligned to words and overlapping mask3
+
+    public BitMaskTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+        NativeOpenCV.load();
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+        w = 200;
+        h = 100;
+        blocksDrawer = new BlocksDrawer(w, h, 3);
+        blocksDrawer.fillTop();
+        blocksDrawer.fillBlock(2, 0);
+        mask1 = new Mask(blocksDrawer.getMat(), blocksDrawer.getDrawnWindow());
+        blocksDrawer.clear();
+        blocksDrawer.fillRight();
+        mask2 = new Mask(blocksDrawer.getMat(), blocksDrawer.getDrawnWindow());
+        Mat mat = createRandomMat(w, h, 1);
+        mask3 = new Mask(mat, new Rect(37, 5, 150, 60));
+        mask4 = new Mask(mat, new Rect(101, 20, 70, 75));
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of toMask method, of class BitMask.
+     */
+    @Test
+    public void testToMask()
+    {
+        System.out.println("toMask");
+
+        BitMask bitMask = new BitMask(mask1);
+        Mask mask = bitMask.toMask();
+        System.out.println(bitMask.toString());
+
+        Assert.assertEquals(mask1.getWindow(), mask.getWindow());
+        Assert.assertTrue(checkSamePixels(mask1, mask));
+    }
+
+    /**
+     * Test of computeMass method, of class BitMask.
+     */
+    @Test
+    public void testComputeMass()
+    {
+        System.out.println("computeMass");
+
+        BitMask bitMask = new BitMask(mask1);
+        Assert.assertEquals(mask1.computeMass(), bitMask.computeMass());
+    }
+
+    /**
+     * Test of computeEllipse method, of class BitMask.
+     */
+    @Test
+    public void testComputeEllipse()
+    {
+        System.out.println("computeEllipse");
+
+        BitMask bitMask = new BitMask(mask1);
+        Assert.assertEquals(mask1.computeEllipse(), bitMask.computeEllipse());
+    }
+
+    /**
+     * Test of merge method, of class BitMask.
+     */
+    @Test
+    public void testMerge()
+    {
+        System.out.println("merge");
+
+        Mask mask3 = (Mask)mask1.clone();
+        mask3.merge(mask2);
+        BitMask bitMask = new BitMask(mask1);
+        bitMask.merge(new BitMask(mask2));
+
+        Assert.assertEquals(mask3.getWindow(), bitMask.getWindow());
+        Assert.assertEquals(mask3.computeMass(), bitMask.computeMass());
+        Assert.assertTrue(checkSamePixels(mask3, bitMask.toMask()));
+    }
+
+    /**
+     * Test of intersect method, of class BitMask.
+     */
+    @Test
+    public void testIntersect()
+    {
+        System.out.println("intersect");
+
+        Mask mask3 = (Mask)mask1.clone();
+        mask3.intersect(mask2);
+        BitMask bitMask = new BitMask(mask1);
+        bitMask.intersect(new BitMask(mask2));
+
+        Assert.assertEquals(mask3.getWindow(), bitMask.getWindow());
+        Assert.assertEquals(mask3.computeMass(), bitMask.computeMass());
+        Assert.assertTrue(checkSamePixels(mask3, bitMask.toMask()));
+    }
+
+    /**
+     * Test of and method, of class BitMask.
+     */
+    @Test
+    public void testAnd()
+    {
+        System.out.println("and");
+
+        Mask mask3 = (Mask)mask1.clone();
+        mask3.and(mask2);
+        BitMask bitMask = new BitMask(mask1);
+        bitMask.and(new BitMask(mask2));
+
+        Assert.assertEquals(mask3.getWindow(), bitMask.getWindow());
+        Assert.assertEquals(mask3.computeEllipse(), bitMask.computeEllipse());
+        Assert.assertTrue(checkSamePixels(mask3, bitMask.toMask()));
+    }
+
+    /**
+     * Test of toMask method (unaligned windows), of class BitMask.
+     */
+    @Test
+    public void testToMaskUnaligned()
+    {
+        System.out.println("toMask unaligned");
+
+        for (Mask mask : new Mask[] {mask3, mask4})
+        {
+            BitMask bitMask = new BitMask(mask);
+            Mask mask5 = bitMask.toMask();
+            Assert.assertEquals(mask.getWindow(), mask5.getWindow());
+            Assert.assertTrue(checkSamePixels(mask, mask5));
+            Assert.assertEquals(mask.computeMass(), bitMask.computeMass());
+            Assert.assertEquals(mask.computeMoments(), bitMask.computeMoments());
+        }
+    }
+
+    /**
+     * Test of merge, intersect and and methods (unaligned windows), of class BitMask.
+     */
+    @Test
+    public void testCombineUnaligned()
+    {
+        System.out.println("combine unaligned");
+
+        Mask mask5 = (Mask)mask3.clone();
+        mask5.merge(mask4);
+        BitMask bitMask = new BitMask(mask3);
+        bitMask.merge(new BitMask(mask4));
+        Assert.assertEquals(mask5.getWindow(), bitMask.getWindow());
+        Assert.assertTrue(checkSamePixels(mask5, bitMask.toMask()));
+
+        mask5 = (Mask)mask3.clone();
+        mask5.intersect(mask4);
+        bitMask = new BitMask(mask3);
+        bitMask.intersect(new BitMask(mask4));
+        Assert.assertEquals(mask5.getWindow(), bitMask.getWindow());
+        Assert.assertTrue(checkSamePixels(mask5, bitMask.toMask()));
+
+        // the second mask at the left of the first one
+        mask5 = (Mask)mask4.clone();
+        mask5.and(mask3);
+        bitMask = new BitMask(mask4);
+        bitMask.and(new BitMask(mask3));
+        Assert.assertEquals(mask5.getWindow(), bitMask.getWindow());
+        Assert.assertTrue(checkSamePixels(mask5, bitMask.toMask()));
+    }
+
+    /**
+     * Test of computeMass method (given window), of class BitMask.
+     */
+    @Test
+    public void testComputeMassWindow()
+    {
+        System.out.println("computeMass window");
+
+        BitMask bitMask = new BitMask(mask3);
+        Rect[] windows = {new Rect(37, 5, 150, 60), new Rect(40, 10, 64, 20), new Rect(50, 0, 100, 100), 
+            new Rect(0, 30, 300, 1), new Rect(180, 60, 50, 50), new Rect(0, 0, 20, 20)};
+        for (Rect window : windows)
+            Assert.assertEquals(mask3.computeMass(window), bitMask.computeMass(window));
+    }
+
+    /**
+     * Test of countOverlap method, of class BitMask.
+     */
+    @Test
+    public void testCountOverlap()
+    {
+        System.out.println("countOverlap");
+
+        BitMask bitMask3 = new BitMask(mask3);
+        BitMask bitMask4 = new BitMask(mask4);
+        Assert.assertEquals(mask3.countOverlap(mask4), bitMask3.countOverlap(bitMask4));
+        Assert.assertEquals(mask4.countOverlap(mask3), bitMask4.countOverlap(bitMask3));
+        Assert.assertEquals(mask1.countOverlap(mask2), new BitMask(mask1).countOverlap(new BitMask(mask2)));
+        Assert.assertEquals(mask3.computeOverlapFraction1(mask4), bitMask3.computeOverlapFraction1(bitMask4), 0.0001f);
+        Assert.assertEquals(mask3.computeOverlapFraction2(mask4), bitMask3.computeOverlapFraction2(bitMask4), 0.0001f);
+        // disjoint masks
+        Assert.assertEquals(0, bitMask3.countOverlap(new BitMask(new Mask(createRandomMat(w, h, 2), new Rect(0, 70, 64, 30)))));
+    }
+
+    /**
+     * Test of computeLevelCurve and binarize methods, of class BitMask.
+     */
+    @Test
+    public void testLevels()
+    {
+        System.out.println("levels");
+
+        BitMask bitMask = new BitMask(mask3);
+        for (int value : new int[] {0, 255, 100})
+            Assert.assertTrue(checkSamePixels(mask3.computeLevelCurve(value), bitMask.computeLevelCurve(value)));
+
+        for (int value : new int[] {100, 0, 255, -1})
+        {
+            Mask mask5 = (Mask)mask3.clone();
+            mask5.binarize(value);
+            BitMask bitMask5 = new BitMask(mask3);
+            bitMask5.binarize(value);
+            Assert.assertTrue(checkSamePixels(mask5, bitMask5.toMask()));
+            Assert.assertEquals(mask5.computeMass(), bitMask5.computeMass());
+        }
+    }
+
+    // check that two masks with the same window have the same pixels
+    private boolean checkSamePixels(Mask mask1, Mask mask2)
+    {
+        return checkSamePixels(mask1.getMat(), mask2.getMat());
+    }
+
+    // check that two matrices of the same size have the same pixels
+    private boolean checkSamePixels(Mat mat1, Mat mat2)
+    {
+        Mat diff = new Mat();
+        Core.bitwise_xor(mat1, mat2, diff);
+        return (Core.countNonZero(diff) == 0);
+    }
+
+    // create a binary matrix with random pixels (half of them set)
+    private Mat createRandomMat(int w, int h, long seed)
+    {
+        Random random = new Random(seed);
+        byte[] buffer = new byte[w*h];
+        for (int i=0; i<buffer.length; i++)
+            buffer[i] = random.nextBoolean() ? (byte)255 : 0;
+        Mat mat = new Mat(h, w, CvType.CV_8UC1);
+        mat.put(0, 0, buffer);
+        return mat;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ *  Copyright (C) 2019 by Migtron Robotics   
+ *  albarral@migtron.com
+ */
+package migtron.tron.cv;
+
+import migtron.tron.math.Vec3f;
+import migtron.tron.math.color.RGBColor;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+/**
+ *
+ * @author albarral
+ */
+public class ColorCVTest 
+{
+    public ColorCVTest() {
+    }
+    
+    @BeforeClass
+    public static void setUpClass() {
+        NativeOpenCV.load();
+    }
+    
+    @AfterClass
+    public static void tearDownClass() {
+    }
+    
+    @Before
+    public void setUp() {
+    }
+    
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of toHSV method, of class ColorCV.
+     */
+    @Test
+    public void testToHSV() 
+    {
+        System.out.println("toHSV");
+        
+        Mat image = new Mat(40, 50, CvType.CV_8UC3);
+        Core.randu(image, 0, 256);
+        // also for image regions (not continuous)
+        Mat region = image.submat(new Rect(5, 10, 30, 20));
+        float[] hsv = new float[3*30*20];
+        ColorCV.toHSV(region, hsv);
+
+        byte[] rgb = new byte[3];
+        for (int y=0; y<region.rows(); y++)
+            for (int x=0; x<region.cols(); x++)
+            {
+                region.get(y, x, rgb);
+                Vec3f expected = RGBColor.toHSV(new Vec3f(rgb[0] & 0xFF, rgb[1] & 0xFF, rgb[2] & 0xFF));
+                int k = 3*(y*region.cols() + x);
+                Assert.assertEquals(expected, new Vec3f(hsv[k], hsv[k+1], hsv[k+2]));
+            }
+        
+        // only RGB images can be converted
+        try {
+            ColorCV.toHSV(new Mat(4, 4, CvType.CV_8UC1), hsv);
+            Assert.fail();
+        }
+        catch (IllegalArgumentException e) {
+        }
+    }
+}
@@ -22,6 +22,7 @@ import org.junit.Ignore;
 import org.junit.Test;
 
 import org.opencv.core.Mat;
+import org.opencv.core.Rect;
 
 
 /**
@@ -118,6 +119,29 @@ public class MaskTest
         Assert.assertEquals(expResult, mass);
     }
 
+    /**
+     * Test of computeMoments method, of class Mask.
+     */
+    @Test
+    public void testComputeMoments() 
+    {
+        System.out.println("computeMoments");
+
+        blocksDrawer.fillBlock(1, 1);
+        blocksDrawer.fillBlock(0, 0);
+        Mask mask1 = new Mask(blocksDrawer.getMat(), blocksDrawer.getDrawnWindow());
+
+        Moments moments = mask1.computeMoments();
+        System.out.println(moments.toString());
+        
+        // mass must agree with the pixel count, and the centroid of two diagonal blocks lies in the window center
+        Rect window = mask1.getWindow();
+        Ellipse ellipse = moments.computeEllipse(window.x, window.y);
+        Assert.assertEquals(mask1.computeMass(), moments.getMass());
+        Assert.assertEquals(window.x + (window.width-1)/2.0f, ellipse.getPosition().x, 0.01f);
+        Assert.assertEquals(window.y + (window.height-1)/2.0f, ellipse.getPosition().y, 0.01f);
+    }
+
     /**
      * Test of computeLevelCurve method, of class Mask.
      */
@@ -166,6 +190,39 @@ public class MaskTest
         Assert.assertTrue((mass1 + mass2) == mass3);
     }
 
+    /**
+     * Test of merge method, of class Mask, with tracked moments.
+     */
+    @Test
+    public void testMergeMoments() {
+        System.out.println("merge moments");
+
+        // top filled mask
+        blocksDrawer.fillTop();
+        Mask mask1 = new Mask(blocksDrawer.getMat(), blocksDrawer.getDrawnWindow());
+
+        // right filled mask (overlaps the top one)
+        blocksDrawer.clear();
+        blocksDrawer.fillRight();
+        Mask mask2 = new Mask(blocksDrawer.getMat(), blocksDrawer.getDrawnWindow());
+        
+        // merge tracking moments (incremental update) and without them (full scan)
+        Mask mask3 = (Mask)mask1.clone();                
+        mask3.getMoments();
+        mask3.merge(mask2);        
+        Mask mask4 = (Mask)mask1.clone();                
+        mask4.merge(mask2);        
+
+        Moments moments3 = mask3.computeMoments();
+        Moments moments4 = new Moments();
+        mask4.computeMoments(moments4);
+        System.out.println("incremental " + moments3.toString());
+        System.out.println("scanned " + moments4.toString());
+
+        Assert.assertEquals(moments4, moments3);
+        Assert.assertEquals(mask4.computeEllipse(), mask3.computeEllipse());
+    }
+
     /**
      * Test of intersect method, of class Mask.
      */
@@ -198,6 +255,66 @@ public class MaskTest
         Assert.assertTrue(mass3 == mass1/3 && mass3 == mass2/3);
     }  
 
+    /**
+     * Test of countOverlap method, of class Mask.
+     */
+    @Test
+    public void testCountOverlap() {
+        System.out.println("countOverlap");
+
+        // top filled mask
+        blocksDrawer.fillTop();
+        Mask mask1 = new Mask(blocksDrawer.getMat(), blocksDrawer.getDrawnWindow());
+
+        // right filled mask
+        blocksDrawer.clear();
+        blocksDrawer.fillRight();
+        Mask mask2 = new Mask(blocksDrawer.getMat(), blocksDrawer.getDrawnWindow());
+        
+        // intersect 1 & 2 (with cloned 1)
+        Mask mask3 = (Mask)mask1.clone();                
+        mask3.intersect(mask2);        
+        Rect window1 = mask1.getWindow().clone();
+        Rect window2 = mask2.getWindow().clone();
+
+        int overlap = mask1.countOverlap(mask2);
+        
+        Assert.assertEquals(mask3.computeMass(), overlap);
+        Assert.assertEquals(overlap, mask2.countOverlap(mask1));
+        Assert.assertEquals(1.0f/3, mask1.computeOverlapFraction1(mask2), 0.001f);
+        // operands untouched
+        Assert.assertEquals(window1, mask1.getWindow());
+        Assert.assertEquals(window2, mask2.getWindow());
+    }  
+
+    /**
+     * Test of computeMass method with window, of class Mask.
+     */
+    @Test
+    public void testComputeMassInWindow() {
+        System.out.println("computeMass (window)");
+
+        // top filled mask
+        blocksDrawer.fillTop();
+        Mask mask1 = new Mask(blocksDrawer.getMat(), blocksDrawer.getDrawnWindow());
+
+        // right filled mask
+        blocksDrawer.clear();
+        blocksDrawer.fillRight();
+        Mask mask2 = new Mask(blocksDrawer.getMat(), blocksDrawer.getDrawnWindow());
+
+        // mass of mask1 inside the window of the (fully filled) mask2
+        Rect window2 = mask2.getWindow();
+        Assert.assertEquals(mask1.countOverlap(mask2), mask1.computeMass(window2));
+        // whole image window
+        Assert.assertEquals(mask1.computeMass(), mask1.computeMass(new Rect(0, 0, w, h)));
+
+        // table rebuilt after the mask changes
+        mask1.merge(mask2);
+        Assert.assertEquals(mask2.computeMass(), mask1.computeMass(window2));
+        Assert.assertEquals(mask1.computeMass(), mask1.computeMass(new Rect(0, 0, w, h)));
+    }
+
     /**
      * Test of and method, of class Mask.
      */
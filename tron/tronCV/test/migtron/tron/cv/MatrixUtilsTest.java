@@ -0,0 +1,132 @@
+/*
+ *  Copyright (C) 2019 by Migtron Robotics   
+ *  albarral@migtron.com
+ */
+package migtron.tron.cv;
+
+import java.awt.Point;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ *
+ * @author albarral
+ */
+public class MatrixUtilsTest 
+{
+    public MatrixUtilsTest() {
+    }
+    
+    @BeforeClass
+    public static void setUpClass() {
+        NativeOpenCV.load();
+    }
+    
+    @AfterClass
+    public static void tearDownClass() {
+    }
+    
+    @Before
+    public void setUp() {
+    }
+    
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of getCorrespondences method, of class MatrixUtils.
+     */
+    @Test
+    public void testGetCorrespondences() 
+    {
+        System.out.println("getCorrespondences");
+        
+        // greedy choice: (1,1) first, then (0,0) as best of the remaining rows and cols, and finally (2,2)
+        float[] data = {0.6f, 0.8f, 0.1f,
+                        0.7f, 0.9f, 0.2f,
+                        0.5f, 0.3f, 0.2f};
+        Mat mat = new Mat(3, 3, CvType.CV_32FC1);
+        mat.put(0, 0, data);
+        
+        List<Point> expResult = Arrays.asList(new Point(1, 1), new Point(0, 0), new Point(2, 2));
+        Assert.assertEquals(expResult, MatrixUtils.getCorrespondences(mat, 0.1f));
+        // threshold excludes (2,2)
+        Assert.assertEquals(expResult.subList(0, 2), MatrixUtils.getCorrespondences(mat, 0.2f));
+    }
+
+    /**
+     * Test of getCorrespondences method with equal values, of class MatrixUtils.
+     */
+    @Test
+    public void testGetCorrespondencesTies() 
+    {
+        System.out.println("getCorrespondences (ties)");
+        
+        // equal values are taken in row major order
+        float[] data = {0.5f, 0.5f,
+                        0.5f, 0.5f,
+                        0.5f, 0.5f};
+        Mat mat = new Mat(3, 2, CvType.CV_32FC1);
+        mat.put(0, 0, data);
+        
+        List<Point> expResult = Arrays.asList(new Point(0, 0), new Point(1, 1));
+        Assert.assertEquals(expResult, MatrixUtils.getCorrespondences(mat, 0.0f));
+    }
+
+    /**
+     * Test of getOptimalCorrespondences method, of class MatrixUtils.
+     */
+    @Test
+    public void testGetOptimalCorrespondences() 
+    {
+        System.out.println("getOptimalCorrespondences");
+        
+        // greedy choice takes (0,0) and then (1,1), total 1.0 
+        // optimal choice takes (0,1) and (1,0), total 1.5
+        float[] data = {0.9f, 0.8f, 0.2f,
+                        0.7f, 0.1f, 0.0f};
+        Mat mat = new Mat(2, 3, CvType.CV_32FC1);
+        mat.put(0, 0, data);
+        
+        List<Point> expResult = Arrays.asList(new Point(0, 1), new Point(1, 0));
+        Assert.assertEquals(Arrays.asList(new Point(0, 0), new Point(1, 1)), MatrixUtils.getCorrespondences(mat, 0.05f));
+        Assert.assertEquals(expResult, MatrixUtils.getOptimalCorrespondences(mat, 0.05f, false));
+        Assert.assertEquals(expResult, MatrixUtils.getOptimalCorrespondences(mat, 0.05f, true));
+        
+        // transposed matrix (more rows than cols)
+        Mat mat2 = mat.t();
+        List<Point> expResult2 = Arrays.asList(new Point(0, 1), new Point(1, 0));
+        Assert.assertEquals(expResult2, MatrixUtils.getOptimalCorrespondences(mat2, 0.05f, false));
+        Assert.assertEquals(expResult2, MatrixUtils.getOptimalCorrespondences(mat2, 0.05f, true));
+    }
+
+    /**
+     * Test of getOptimalCorrespondences method with threshold, of class MatrixUtils.
+     */
+    @Test
+    public void testGetOptimalCorrespondencesThreshold() 
+    {
+        System.out.println("getOptimalCorrespondences (threshold)");
+        
+        // (1,0) is below threshold, so row 1 stays unpaired
+        float[] data = {0.9f, 0.8f,
+                        0.3f, 0.1f};
+        Mat mat = new Mat(2, 2, CvType.CV_32FC1);
+        mat.put(0, 0, data);
+        
+        List<Point> expResult = Arrays.asList(new Point(0, 0));
+        Assert.assertEquals(expResult, MatrixUtils.getOptimalCorrespondences(mat, 0.5f, false));
+        Assert.assertEquals(expResult, MatrixUtils.getOptimalCorrespondences(mat, 0.5f, true));
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ *  Copyright (C) 2019 by Migtron Robotics   
+ *  albarral@migtron.com
+ */
+package migtron.tron.cv;
+
+import migtron.tron.draw.BlocksDrawer;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+
+/**
+ *
+ * @author albarral
+ */
+public class RLEMaskTest
+{
+    private int w;
+    private int h;
+    private BlocksDrawer blocksDrawer;  // blocks drawing utility
+    private Mask mask1;     // top filled mask
+    private Mask mask2;     // right filled mask
+
+    public RLEMaskTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+        NativeOpenCV.load();
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+        w = 200;
+        h = 100;
+        blocksDrawer = new BlocksDrawer(w, h, 3);
+        blocksDrawer.fillTop();
+        blocksDrawer.fillBlock(2, 0);
+        mask1 = new Mask(blocksDrawer.getMat(), blocksDrawer.getDrawnWindow());
+        blocksDrawer.clear();
+        blocksDrawer.fillRight();
+        mask2 = new Mask(blocksDrawer.getMat(), blocksDrawer.getDrawnWindow());
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of toMask method, of class RLEMask.
+     */
+    @Test
+    public void testToMask()
+    {
+        System.out.println("toMask");
+
+        RLEMask rleMask = new RLEMask(mask1);
+        Mask mask = rleMask.toMask();
+        System.out.println(rleMask.toString());
+
+        Assert.assertEquals(mask1.getWindow(), mask.getWindow());
+        Assert.assertTrue(checkSamePixels(mask1, mask));
+    }
+
+    /**
+     * Test of computeMass method, of class RLEMask.
+     */
+    @Test
+    public void testComputeMass()
+    {
+        System.out.println("computeMass");
+
+        RLEMask rleMask = new RLEMask(mask1);
+        Assert.assertEquals(mask1.computeMass(), rleMask.computeMass());
+    }
+
+    /**
+     * Test of computeEllipse method, of class RLEMask.
+     */
+    @Test
+    public void testComputeEllipse()
+    {
+        System.out.println("computeEllipse");
+
+        RLEMask rleMask = new RLEMask(mask1);
+        Assert.assertEquals(mask1.computeEllipse(), rleMask.computeEllipse());
+    }
+
+    /**
+     * Test of merge method, of class RLEMask.
+     */
+    @Test
+    public void testMerge()
+    {
+        System.out.println("merge");
+
+        Mask mask3 = (Mask)mask1.clone();
+        mask3.merge(mask2);
+        RLEMask rleMask = new RLEMask(mask1);
+        rleMask.merge(new RLEMask(mask2));
+
+        Assert.assertEquals(mask3.getWindow(), rleMask.getWindow());
+        Assert.assertEquals(mask3.computeMass(), rleMask.computeMass());
+        Assert.assertTrue(checkSamePixels(mask3, rleMask.toMask()));
+    }
+
+    /**
+     * Test of intersect method, of class RLEMask.
+     */
+    @Test
+    public void testIntersect()
+    {
+        System.out.println("intersect");
+
+        Mask mask3 = (Mask)mask1.clone();
+        mask3.intersect(mask2);
+        RLEMask rleMask = new RLEMask(mask1);
+        rleMask.intersect(new RLEMask(mask2));
+
+        Assert.assertEquals(mask3.getWindow(), rleMask.getWindow());
+        Assert.assertEquals(mask3.computeMass(), rleMask.computeMass());
+        Assert.assertTrue(checkSamePixels(mask3, rleMask.toMask()));
+    }
+
+    /**
+     * Test of and method, of class RLEMask.
+     */
+    @Test
+    public void testAnd()
+    {
+        System.out.println("and");
+
+        Mask mask3 = (Mask)mask1.clone();
+        mask3.and(mask2);
+        RLEMask rleMask = new RLEMask(mask1);
+        rleMask.and(new RLEMask(mask2));
+
+        Assert.assertEquals(mask3.getWindow(), rleMask.getWindow());
+        Assert.assertEquals(mask3.computeEllipse(), rleMask.computeEllipse());
+        Assert.assertTrue(checkSamePixels(mask3, rleMask.toMask()));
+    }
+
+    // check that two masks with the same window have the same pixels
+    private boolean checkSamePixels(Mask mask1, Mask mask2)
+    {
+        Mat diff = new Mat();
+        Core.bitwise_xor(mask1.getMat(), mask2.getMat(), diff);
+        return (Core.countNonZero(diff) == 0);
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ *  Copyright (C) 2019 by Migtron Robotics   
+ *  albarral@migtron.com
+ */
+package migtron.tron.cv;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.opencv.core.Rect;
+
+/**
+ *
+ * @author albarral
+ */
+public class WindowIndexTest 
+{
+    private int w;
+    private int h;
+    private Random random;
+    private List<Rect> listWindows;     // indexed windows (items are their positions in the list)
+    private List<Integer> listItems;    // indexed items (the same objects must be used to access them, as the index works by identity)
+    private WindowIndex<Integer> windowIndex;
+    
+    public WindowIndexTest() {
+    }
+    
+    @BeforeClass
+    public static void setUpClass() {
+        NativeOpenCV.load();
+    }
+    
+    @AfterClass
+    public static void tearDownClass() {
+    }
+    
+    @Before
+    public void setUp() {
+        w = 640;
+        h = 480;
+        random = new Random(1);
+        listWindows = new ArrayList<>();
+        listItems = new ArrayList<>();
+        windowIndex = new WindowIndex<>(32);
+        for (int i=0; i<200; i++)
+        {
+            listWindows.add(createWindow());
+            listItems.add(i);
+            windowIndex.put(listItems.get(i), listWindows.get(i));
+        }
+    }
+    
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of getOverlapped method, of class WindowIndex.
+     */
+    @Test
+    public void testGetOverlapped() 
+    {
+        System.out.println("getOverlapped");
+        
+        for (int i=0; i<50; i++)
+        {
+            Rect window = createWindow();
+            List<Integer> expResult = new ArrayList<>();
+            for (int j=0; j<listWindows.size(); j++)
+                if (Window.getOverlapArea(window, listWindows.get(j)) > 0)
+                    expResult.add(j);
+            List<Integer> result = windowIndex.getOverlapped(window);
+            result.sort(null);
+            Assert.assertEquals(expResult, result);
+        }
+    }
+
+    /**
+     * Test of getNeighbours method, of class WindowIndex.
+     */
+    @Test
+    public void testGetNeighbours() 
+    {
+        System.out.println("getNeighbours");
+        
+        float distance = 25.5f;
+        for (int i=0; i<listWindows.size(); i++)
+        {
+            Assert.assertEquals(getNeighbours(i, distance), windowIndex.getNeighbours(listItems.get(i), distance));
+        }
+    }
+
+    /**
+     * Test of getNearest method, of class WindowIndex.
+     */
+    @Test
+    public void testGetNearest() 
+    {
+        System.out.println("getNearest");
+        
+        int k = 5;
+        for (int i=0; i<listWindows.size(); i++)
+        {
+            List<Integer> expResult = getNeighbours(i, Float.MAX_VALUE).subList(0, k);
+            Assert.assertEquals(expResult, windowIndex.getNearest(listItems.get(i), k));
+        }
+    }
+
+    /**
+     * Test of put method (moving items), of class WindowIndex.
+     */
+    @Test
+    public void testMove() 
+    {
+        System.out.println("move");
+        
+        // move all windows a bit, and some far away
+        for (int i=0; i<listWindows.size(); i++)
+        {
+            Rect window = listWindows.get(i);
+            if (i % 10 == 0)
+                window = createWindow();
+            else
+                window = Window.translate(window, random.nextInt(21) - 10, random.nextInt(21) - 10);
+            listWindows.set(i, window);
+            windowIndex.put(listItems.get(i), window);
+        }
+        // and remove some of them
+        for (int i=0; i<listWindows.size(); i+=7)
+            windowIndex.remove(listItems.get(i));
+
+        float distance = 10.0f;
+        for (int i=0; i<listWindows.size(); i++)
+        {
+            if (i % 7 == 0)
+                continue;
+            List<Integer> expResult = getNeighbours(i, distance);
+            expResult.removeIf(j -> j % 7 == 0);
+            Assert.assertEquals(expResult, windowIndex.getNeighbours(listItems.get(i), distance));
+        }
+    }
+
+    /**
+     * Test of put method (items equal by value), of class WindowIndex.
+     */
+    @Test
+    public void testPutEqualItems() 
+    {
+        System.out.println("putEqualItems");
+        
+        // distinct items that are equal by value are indexed separately
+        WindowIndex<String> index = new WindowIndex<>(32);
+        String item1 = new String("body");
+        String item2 = new String("body");
+        index.put(item1, new Rect(0, 0, 10, 10));
+        index.put(item2, new Rect(100, 100, 10, 10));
+        Assert.assertEquals(2, index.size());
+        Assert.assertEquals(new Rect(0, 0, 10, 10), index.getWindow(item1));
+        Assert.assertEquals(new Rect(100, 100, 10, 10), index.getWindow(item2));
+        Assert.assertTrue(index.remove(item1));
+        Assert.assertFalse(index.contains(item1));
+        Assert.assertTrue(index.contains(item2));
+    }
+
+    // get the neighbours of an indexed window by brute force (sorted by separation, then by index)
+    private List<Integer> getNeighbours(int index, float distance)
+    {
+        Rect window = listWindows.get(index);
+        List<Integer> listNeighbours = new ArrayList<>();
+        for (int j=0; j<listWindows.size(); j++)
+            if (j != index && Window.getSeparation(window, listWindows.get(j)) <= distance)
+                listNeighbours.add(j);
+        listNeighbours.sort((j1, j2) -> 
+        {
+            int result = Float.compare(Window.getSeparation(window, listWindows.get(j1)), Window.getSeparation(window, listWindows.get(j2)));
+            return (result != 0) ? result : Integer.compare(j1, j2);
+        });
+        return listNeighbours;
+    }
+
+    // create a random window inside the image
+    private Rect createWindow()
+    {
+        return new Rect(random.nextInt(w), random.nextInt(h), 1 + random.nextInt(60), 1 + random.nextInt(60));
+    }
+}
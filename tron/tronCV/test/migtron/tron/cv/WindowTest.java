@@ -0,0 +1,146 @@
+/*
+ *  Copyright (C) 2019 by Migtron Robotics   
+ *  albarral@migtron.com
+ */
+package migtron.tron.cv;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.opencv.core.Rect;
+
+/**
+ *
+ * @author albarral
+ */
+public class WindowTest 
+{
+    private Rect window1;
+    private Rect window2;
+    
+    public WindowTest() {
+    }
+    
+    @BeforeClass
+    public static void setUpClass() {
+        NativeOpenCV.load();
+    }
+    
+    @AfterClass
+    public static void tearDownClass() {
+    }
+    
+    @Before
+    public void setUp() {
+        window1 = new Rect(10, 10, 20, 10);
+        window2 = new Rect(20, 15, 20, 20);
+    }
+    
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of intersect method, of class Window.
+     */
+    @Test
+    public void testIntersect() 
+    {
+        System.out.println("intersect");
+        
+        Rect result = new Rect();
+        Window.intersect(window1, window2, result);
+        Assert.assertEquals(new Rect(20, 15, 10, 5), result);
+        Assert.assertEquals(result, Window.getIntersection(window1, window2));
+        Assert.assertEquals(50, Window.getOverlapArea(window1, window2));
+        
+        // in place (result is first window)
+        Window.intersect(window1, window2, window1);
+        Assert.assertEquals(result, window1);
+    }
+
+    /**
+     * Test of getOverlapArea method, of class Window.
+     */
+    @Test
+    public void testGetOverlapArea() 
+    {
+        System.out.println("getOverlapArea");
+        
+        // overlapped windows (symmetric)
+        Assert.assertEquals(50, Window.getOverlapArea(window1, window2));
+        Assert.assertEquals(50, Window.getOverlapArea(window2, window1));
+        // contained window
+        Assert.assertEquals(20, Window.getOverlapArea(window1, new Rect(12, 12, 5, 4)));
+        // disjoint windows
+        Assert.assertEquals(0, Window.getOverlapArea(window1, new Rect(50, 50, 10, 10)));
+        Assert.assertEquals(0, Window.getOverlapArea(window1, new Rect(15, 30, 10, 10)));
+        // touching windows (side by side, one above the other, by a corner)
+        Assert.assertEquals(0, Window.getOverlapArea(window1, new Rect(30, 12, 10, 10)));
+        Assert.assertEquals(0, Window.getOverlapArea(window1, new Rect(15, 20, 10, 10)));
+        Assert.assertEquals(0, Window.getOverlapArea(window1, new Rect(30, 20, 10, 10)));
+        Assert.assertEquals(0, Window.getOverlapArea(new Rect(30, 20, 10, 10), window1));
+        // empty window
+        Assert.assertEquals(0, Window.getOverlapArea(window1, new Rect(15, 15, 0, 0)));
+    }
+
+    /**
+     * Test of unite method, of class Window.
+     */
+    @Test
+    public void testUnite() 
+    {
+        System.out.println("unite");
+        
+        Rect result = new Rect();
+        Window.unite(window1, window2, result);
+        Assert.assertEquals(new Rect(10, 10, 30, 25), result);
+        Assert.assertEquals(result, Window.getUnion(window1, window2));
+        
+        // empty windows are ignored
+        Window.unite(new Rect(), window2, result);
+        Assert.assertEquals(window2, result);
+    }
+
+    /**
+     * Test of expand method, of class Window.
+     */
+    @Test
+    public void testExpand() 
+    {
+        System.out.println("expand");
+        
+        // empty window becomes the point window
+        Rect window = new Rect();
+        Window.expand(window, 5, 3);
+        Assert.assertEquals(new Rect(5, 3, 1, 1), window);
+
+        Window.expand(window, 8, 1);
+        Assert.assertEquals(new Rect(5, 1, 4, 3), window);
+        // inner points don't change the window
+        Window.expand(window, 6, 2);
+        Assert.assertEquals(new Rect(5, 1, 4, 3), window);
+    }
+
+    /**
+     * Test of getSeparation method, of class Window.
+     */
+    @Test
+    public void testGetSeparation() 
+    {
+        System.out.println("getSeparation");
+        
+        // overlapped windows
+        Assert.assertEquals(0.0f, Window.getSeparation(window1, window2), 0.0f);
+        // windows overlapped in x, separated in y
+        Assert.assertEquals(5.0f, Window.getSeparation(window1, new Rect(15, 25, 10, 10)), 0.0f);
+        // side by side windows (touching)
+        Assert.assertEquals(0.0f, Window.getSeparation(window1, new Rect(30, 12, 10, 10)), 0.0f);
+        // diagonal windows (distance between closest java vertices)
+        Assert.assertEquals(5.0f, Window.getSeparation(window1, new Rect(32, 23, 10, 10)), 0.0f);
+    }
+}
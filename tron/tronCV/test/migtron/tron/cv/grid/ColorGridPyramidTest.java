@@ -0,0 +1,155 @@
+/*
+ *  Copyright (C) 2019 by Migtron Robotics   
+ *  albarral@migtron.com
+ */
+package migtron.tron.cv.grid;
+
+import migtron.tron.cv.Mask;
+import migtron.tron.cv.NativeOpenCV;
+import migtron.tron.math.Vec3f;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+
+/**
+ *
+ * @author albarral
+ */
+public class ColorGridPyramidTest
+{
+    private int w;
+    private int h;
+    private Mat image;
+    private Mat mat;
+
+    public ColorGridPyramidTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+        NativeOpenCV.load();
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+        w = 101;
+        h = 77;
+        // random image and mask
+        image = new Mat(h, w, CvType.CV_8UC3);
+        Core.randu(image, 0, 256);
+        mat = new Mat(h, w, CvType.CV_8UC1);
+        Core.randu(mat, 0, 2);
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of getLevel method, of class ColorGridPyramid.
+     */
+    @Test
+    public void testGetLevel()
+    {
+        System.out.println("getLevel");
+
+        float reductionFactor = 0.4f;
+        ColorGridPyramid pyramid = new ColorGridPyramid(w, h, reductionFactor, 3);
+        Mask mask1 = new Mask(mat, new Rect(7, 3, 60, 40));
+        Mask mask2 = new Mask(mat, new Rect(50, 30, 51, 47));
+        pyramid.addColorSamples(image, mask1);
+        pyramid.addColorSamples(image, mask2);
+
+        // each level must equal a grid sampled directly with its reduction factor
+        float factor = reductionFactor;
+        for (int i=0; i<pyramid.getNumLevels(); i++)
+        {
+            ColorGrid colorGrid = new ColorGrid(w, h, factor);
+            colorGrid.addColorSamples(image, mask1);
+            colorGrid.addColorSamples(image, mask2);
+            ColorGrid level = pyramid.getLevel(i);
+
+            Mat diff = new Mat();
+            Core.absdiff(colorGrid.getSamplesMatrix(), level.getSamplesMatrix(), diff);
+            Assert.assertEquals(0, Core.countNonZero(diff));
+            Core.absdiff(colorGrid.getColorMatrix(), level.getColorMatrix(), diff);
+            Assert.assertTrue(Core.norm(diff, Core.NORM_INF) < 0.001);
+            Assert.assertEquals(colorGrid.getSampledWindow(), level.getSampledWindow());
+            Vec3f color1 = colorGrid.getGlobalColor();
+            Vec3f color2 = level.getGlobalColor();
+            Assert.assertEquals(color1.getX(), color2.getX(), 0.001f);
+            Assert.assertEquals(color1.getY(), color2.getY(), 0.001f);
+            Assert.assertEquals(color1.getZ(), color2.getZ(), 0.001f);
+            // local queries work at any level (done on clones, as they change the focused node)
+            ColorGrid cloned1 = (ColorGrid)colorGrid.clone();
+            ColorGrid cloned2 = (ColorGrid)level.clone();
+            cloned1.focus(60, 40);
+            cloned2.focus(60, 40);
+            Assert.assertEquals(cloned1.getFocus(), cloned2.getFocus());
+            Vec3f local1 = cloned1.getLocalColor();
+            Vec3f local2 = cloned2.getLocalColor();
+            Assert.assertEquals(local1.getX(), local2.getX(), 0.001f);
+            factor /= 2;
+        }
+    }
+
+    /**
+     * Test of merge method, of class ColorGridPyramid.
+     */
+    @Test
+    public void testMerge()
+    {
+        System.out.println("merge");
+
+        ColorGridPyramid pyramid = new ColorGridPyramid(w, h, 0.2f, 2);
+        ColorGridPyramid pyramid2 = (ColorGridPyramid)pyramid.clone();
+        pyramid.addColorSamples(image, new Mask(mat, new Rect(0, 0, 50, 50)));
+        pyramid2.addColorSamples(image, new Mask(mat, new Rect(30, 20, 50, 50)));
+        // derive the coarse level before merging, so it must be derived again
+        pyramid.getLevel(1);
+        Assert.assertTrue(pyramid.merge(pyramid2));
+
+        ColorGrid level = pyramid.getLevel(1);
+        Assert.assertEquals(pyramid.getFinestLevel().getTotalSamples(), level.getTotalSamples());
+        Assert.assertEquals((int)Core.sumElems(pyramid.getFinestLevel().getSamplesMatrix()).val[0], (int)Core.sumElems(level.getSamplesMatrix()).val[0]);
+    }
+
+    /**
+     * Test of getLevel method (saturated nodes), of class ColorGridPyramid.
+     */
+    @Test
+    public void testGetLevelSaturated()
+    {
+        System.out.println("getLevel saturated");
+
+        // 20000 samples of the same color in each finest node (so each coarser node gets 80000)
+        int repW = 40;
+        int repH = 40;
+        ColorGridPyramid pyramid = new ColorGridPyramid(repW, repH, 0.1f, 2);
+        Mat uniform = new Mat(repH, repW, CvType.CV_8UC3, new Scalar(100, 100, 100));
+        Mask mask = new Mask(Mat.ones(repH, repW, CvType.CV_8UC1));
+        for (int i=0; i<200; i++)
+            pyramid.addColorSamples(uniform, mask);
+
+        ColorGrid level = pyramid.getLevel(1);
+        level.focus(0, 0);
+        Assert.assertEquals(SampleGrid.MAX_SAMPLES, level.getFocusSamples() & 0xFFFF);
+        Assert.assertEquals(100.0f, level.getFocusColor().getX(), 0.01f);
+        Assert.assertEquals(100.0, level.getColorMatrix().get(1, 1)[0], 0.01);
+        Assert.assertEquals(100.0f, level.getGlobalColor().getX(), 0.01f);
+    }
+}
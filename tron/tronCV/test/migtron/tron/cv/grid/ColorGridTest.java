@@ -4,6 +4,8 @@
  */
 package migtron.tron.cv.grid;
 
+import migtron.tron.cv.AverageCV;
+import migtron.tron.cv.Mask;
 import migtron.tron.cv.NativeOpenCV;
 import migtron.tron.math.Average3f;
 import migtron.tron.math.Vec3f;
@@ -17,6 +19,12 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+
 /**
  *
  * @author albarral
@@ -128,6 +136,267 @@ public class ColorGridTest
         Assert.assertEquals(avg, colorGrid.getFocusColor());
     }
     
+    /**
+     * Test of merge method with unequal samples, of class ColorGrid.
+     */
+    @Test
+    public void testMergeWeighted() 
+    {
+        System.out.println("mergeWeighted");
+    
+        // a node sampled 3 times in red and once in green
+        Vec3i red = Colors.getRGB(Colors.eColor.eCOLOR_RED);
+        Vec3i green = Colors.getRGB(Colors.eColor.eCOLOR_GREEN);
+        ColorGrid colorGrid2 = (ColorGrid)colorGrid.clone();
+        doWalk(colorGrid, 0, 0, 3, 1, red);
+        doWalk(colorGrid2, 0, 0, 1, 1, green);
+        colorGrid.merge(colorGrid2);
+
+        // the merged node weights each color by its samples
+        colorGrid.focus(0, 0);
+        Vec3f expResult = new Vec3f(0.75f*red.getX() + 0.25f*green.getX(), 0.75f*red.getY() + 0.25f*green.getY(), 0.75f*red.getZ() + 0.25f*green.getZ());
+        System.out.println("merged color = " + colorGrid.getFocusColor());                            
+        Assert.assertEquals(4, colorGrid.getFocusSamples());
+        Assert.assertEquals(expResult, colorGrid.getFocusColor());
+        Assert.assertEquals(expResult, colorGrid.getGlobalColor());
+    }
+
+    /**
+     * Test of getGlobalColor method, of class ColorGrid.
+     */
+    @Test
+    public void testGetGlobalColor() 
+    {
+        System.out.println("getGlobalColor");
+    
+        // walk a red region and a smaller green one
+        Vec3i red = Colors.getRGB(Colors.eColor.eCOLOR_RED);
+        Vec3i green = Colors.getRGB(Colors.eColor.eCOLOR_GREEN);
+        doWalk(colorGrid, 0, 0, 20, 20, red);
+        doWalk(colorGrid, 40, 0, 20, 10, green);
+
+        // the global color weights each node by its samples
+        Vec3f expResult = new Vec3f((400.0f*red.getX() + 200.0f*green.getX())/600, (400.0f*red.getY() + 200.0f*green.getY())/600, (400.0f*red.getZ() + 200.0f*green.getZ())/600);
+        Vec3f result = colorGrid.getGlobalColor();
+        System.out.println("global color = " + result);                            
+        Assert.assertEquals(expResult.getX(), result.getX(), 0.001f);
+        Assert.assertEquals(expResult.getY(), result.getY(), 0.001f);
+        Assert.assertEquals(expResult.getZ(), result.getZ(), 0.001f);
+    }
+
+    /**
+     * Test of getGlobalColor method after merging, of class ColorGrid.
+     */
+    @Test
+    public void testGetGlobalColorAfterMerge() 
+    {
+        System.out.println("getGlobalColorAfterMerge");
+    
+        // walk two overlapped grids with different colors
+        ColorGrid colorGrid2 = (ColorGrid)colorGrid.clone();
+        doWalk(colorGrid, 0, 0, 20, 20, Colors.getRGB(Colors.eColor.eCOLOR_RED));
+        doWalk(colorGrid2, 10, 5, 20, 20, Colors.getRGB(Colors.eColor.eCOLOR_GREEN));
+        doWalk(colorGrid2, 12, 12, 6, 6, Colors.getRGB(Colors.eColor.eCOLOR_BLUE));
+        colorGrid.merge(colorGrid2);
+        // also change a node through its local color
+        colorGrid.focus(15, 15);
+        colorGrid.getLocalColor();
+
+        // the running global color must match the one computed from the merged matrices
+        double[] average = new double[3];
+        long total = AverageCV.computeWeightedAverage(colorGrid.getColorMatrix(), colorGrid.getSamplesMatrix(), average);
+        Vec3f result = colorGrid.getGlobalColor();
+        System.out.println("global color = " + result);                            
+        Assert.assertEquals(total, colorGrid.getTotalSamples());
+        Assert.assertEquals((float)average[0], result.getX(), 0.001f);
+        Assert.assertEquals((float)average[1], result.getY(), 0.001f);
+        Assert.assertEquals((float)average[2], result.getZ(), 0.001f);
+    }
+
+    /**
+     * Test of getLocalColor method, of class ColorGrid.
+     */
+    @Test
+    public void testGetLocalColor() 
+    {
+        System.out.println("getLocalColor");
+    
+        Vec3i red = Colors.getRGB(Colors.eColor.eCOLOR_RED);
+        doWalk(colorGrid, 0, 0, 30, 30, red);
+
+        colorGrid.focus(15, 15);
+        Vec3i color = new Vec3i(colorGrid.getLocalColor());
+        System.out.println("local color = " + color);                            
+        Assert.assertEquals(red, color);
+    }
+    
+    /**
+     * Test of addColorSamples method, of class ColorGrid.
+     */
+    @Test
+    public void testAddColorSamples() 
+    {
+        System.out.println("addColorSamples");
+        
+        // random image and mask
+        Mat image = new Mat(h, w, CvType.CV_8UC3);
+        Core.randu(image, 0, 256);
+        Mat mat = new Mat(h, w, CvType.CV_8UC1);
+        Core.randu(mat, 0, 2);
+        Rect window = new Rect(3, 5, 25, 20);
+        Mask mask = new Mask(mat, window);
+        ColorGrid colorGrid2 = (ColorGrid)colorGrid.clone();
+        doWalk(colorGrid, 0, 0, 10, 10, Colors.getRGB(Colors.eColor.eCOLOR_RED));
+        doWalk(colorGrid2, 0, 0, 10, 10, Colors.getRGB(Colors.eColor.eCOLOR_RED));
+
+        // bulk sampling must equal the sampling of each masked pixel
+        colorGrid.addColorSamples(image, mask);
+        byte[] pixel = new byte[1];
+        byte[] rgb = new byte[3];
+        for (int y=window.y; y<window.y+window.height; y++)
+            for (int x=window.x; x<window.x+window.width; x++)
+            {
+                mat.get(y, x, pixel);
+                image.get(y, x, rgb);
+                if (pixel[0] != 0 && colorGrid2.focus(x, y))
+                    colorGrid2.addColorSample(new Vec3i(rgb[0] & 0xFF, rgb[1] & 0xFF, rgb[2] & 0xFF));
+            }
+        Mat diff = new Mat();
+        Core.absdiff(colorGrid.getSamplesMatrix(), colorGrid2.getSamplesMatrix(), diff);
+        Assert.assertEquals(0, Core.countNonZero(diff));
+        Core.absdiff(colorGrid.getColorMatrix(), colorGrid2.getColorMatrix(), diff);
+        Assert.assertTrue(Core.norm(diff, Core.NORM_INF) < 0.01);
+        Assert.assertEquals(colorGrid2.getSampledWindow(), colorGrid.getSampledWindow());
+        Vec3f color1 = colorGrid.getGlobalColor();
+        Vec3f color2 = colorGrid2.getGlobalColor();
+        Assert.assertEquals(color2.getX(), color1.getX(), 0.01f);
+        Assert.assertEquals(color2.getY(), color1.getY(), 0.01f);
+        Assert.assertEquals(color2.getZ(), color1.getZ(), 0.01f);
+    }
+    
+    /**
+     * Test of computeLocalColors method, of class ColorGrid.
+     */
+    @Test
+    public void testComputeLocalColors() 
+    {
+        System.out.println("computeLocalColors");
+        
+        // random image and mask (sparse, so some neighbourhoods have no samples)
+        int repW = 200;
+        int repH = 150;
+        Mat image = new Mat(repH, repW, CvType.CV_8UC3);
+        Core.randu(image, 0, 256);
+        Mat mat = new Mat(repH, repW, CvType.CV_8UC1);
+        Core.randu(mat, 0, 2);
+        ColorGrid colorGrid2 = new ColorGrid(repW, repH, reductionFactor);
+        colorGrid2.addColorSamples(image, new Mask(mat, new Rect(20, 10, 90, 100)));
+        colorGrid2.addColorSamples(image, new Mask(mat, new Rect(150, 120, 50, 30)));
+
+        // the local color of each node must equal the one given by focusing it (done on clones, as it changes the focused node)
+        for (int radius=0; radius<3; radius++)
+        {
+            colorGrid2.setRadius(radius);
+            float[] localColors = colorGrid2.computeLocalColors();
+            for (int y=0; y<repH; y+=10)
+                for (int x=0; x<repW; x+=10)
+                {
+                    ColorGrid cloned = (ColorGrid)colorGrid2.clone();
+                    cloned.focus(x, y);
+                    Vec3f color = cloned.getLocalColor();
+                    int node = cloned.getFocus().y*colorGrid2.geWidth() + cloned.getFocus().x;
+                    Assert.assertEquals(color.getX(), localColors[3*node], 0.01f);
+                    Assert.assertEquals(color.getY(), localColors[3*node+1], 0.01f);
+                    Assert.assertEquals(color.getZ(), localColors[3*node+2], 0.01f);
+                }
+        }
+    }
+    
+    /**
+     * Test of getColorMatrix method, of class ColorGrid.
+     */
+    @Test
+    public void testGetColorMatrix() 
+    {
+        System.out.println("getColorMatrix");
+        
+        doWalk(colorGrid, 0, 0, 30, 30, Colors.getRGB(Colors.eColor.eCOLOR_RED));
+        colorGrid.getColorMatrix();
+        colorGrid.getSumsMatrix();
+        colorGrid.getSamplesMatrix();
+        // small changes (only the changed nodes are synced on next request)
+        doWalk(colorGrid, 12, 3, 5, 2, Colors.getRGB(Colors.eColor.eCOLOR_BLUE));
+        colorGrid.focus(25, 25);
+        colorGrid.getLocalColor();
+        doWalk(colorGrid, 0, 20, 30, 5, Colors.getRGB(Colors.eColor.eCOLOR_GREEN));
+
+        // views must equal the ones of a clone (fully synced)
+        ColorGrid cloned = (ColorGrid)colorGrid.clone();
+        Mat diff = new Mat();
+        Core.absdiff(colorGrid.getSamplesMatrix(), cloned.getSamplesMatrix(), diff);
+        Assert.assertEquals(0, Core.countNonZero(diff));
+        Core.absdiff(colorGrid.getSumsMatrix(), cloned.getSumsMatrix(), diff);
+        Assert.assertEquals(0.0, Core.norm(diff, Core.NORM_INF), 0.0);
+        Core.absdiff(colorGrid.getColorMatrix(), cloned.getColorMatrix(), diff);
+        Assert.assertEquals(0.0, Core.norm(diff, Core.NORM_INF), 0.0);
+    }
+    
+    /**
+     * Test of merge method (saturated nodes), of class ColorGrid.
+     */
+    @Test
+    public void testMergeSaturated() 
+    {
+        System.out.println("merge saturated");
+        
+        // 40000 samples of the same color in each node of both grids
+        Mat image = new Mat(h, w, CvType.CV_8UC3, new Scalar(200, 200, 200));
+        Mask mask = new Mask(Mat.ones(h, w, CvType.CV_8UC1));
+        for (int i=0; i<400; i++)
+            colorGrid.addColorSamples(image, mask);
+        ColorGrid colorGrid2 = (ColorGrid)colorGrid.clone();
+        Assert.assertTrue(colorGrid.merge(colorGrid2));
+
+        // capped samples, but same color
+        colorGrid.focus(15, 15);
+        Assert.assertEquals(SampleGrid.MAX_SAMPLES, colorGrid.getFocusSamples() & 0xFFFF);
+        Assert.assertEquals(200.0f, colorGrid.getFocusColor().getX(), 0.01f);
+        Assert.assertEquals(200.0, colorGrid.getColorMatrix().get(1, 1)[0], 0.01);
+        Assert.assertEquals(200.0f, colorGrid.getGlobalColor().getX(), 0.01f);
+        Assert.assertEquals(200.0f, colorGrid.getLocalColor().getX(), 0.01f);
+        // further samples of a saturated node keep averaging (each one weighted as 1 of the capped samples)
+        for (int i=0; i<SampleGrid.MAX_SAMPLES; i++)
+            colorGrid.addColorSample(100, 100, 100);
+        Assert.assertEquals(SampleGrid.MAX_SAMPLES, colorGrid.getFocusSamples() & 0xFFFF);
+        double expected = 100 + 100*Math.pow((double)SampleGrid.MAX_SAMPLES / (SampleGrid.MAX_SAMPLES + 1), SampleGrid.MAX_SAMPLES);
+        Assert.assertEquals(expected, colorGrid.getFocusColor().getX(), 0.5);
+    }
+
+    /**
+     * Test of getLocalColor method (empty node), of class ColorGrid.
+     */
+    @Test
+    public void testGetLocalColorEmptyNode() 
+    {
+        System.out.println("getLocalColor empty node");
+    
+        // sample the top row of nodes, so the central node is empty
+        Vec3i red = Colors.getRGB(Colors.eColor.eCOLOR_RED);
+        doWalk(colorGrid, 0, 0, 30, 10, red);
+
+        // the empty node takes the local color
+        colorGrid.focus(15, 15);
+        Assert.assertEquals(red, new Vec3i(colorGrid.getLocalColor()));
+        Assert.assertEquals(0, colorGrid.getFocusSamples());
+        Assert.assertEquals(red, new Vec3i(colorGrid.getFocusColor()));
+        Assert.assertEquals(red.getX(), colorGrid.getColorMatrix().get(1, 1)[0], 0.01);
+        // and new samples of the node take it
+        colorGrid.addSample();
+        Assert.assertEquals(1, colorGrid.getFocusSamples());
+        Assert.assertEquals(red, new Vec3i(colorGrid.getFocusColor()));
+        Assert.assertEquals(red.getX(), colorGrid.getColorMatrix().get(1, 1)[0], 0.01);
+    }
+    
     // walks a sampled grid adding color samples to all points in a specified window (defined by a top-left point (x0, y0) and with w x h dimensions)
     private void doWalk(ColorGrid colorGrid, int x0, int y0, int w, int h, Vec3i color)
     {
@@ -0,0 +1,145 @@
+/*
+ *  Copyright (C) 2019 by Migtron Robotics   
+ *  albarral@migtron.com
+ */
+package migtron.tron.cv.grid;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import migtron.tron.cv.Mask;
+import migtron.tron.cv.NativeOpenCV;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+/**
+ *
+ * @author albarral
+ */
+public class GridMergerTest
+{
+    private int w;
+    private int h;
+    private float reductionFactor;
+    private List<ColorGrid> listColorGrids;
+
+    public GridMergerTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+        NativeOpenCV.load();
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+        w = 120;
+        h = 90;
+        reductionFactor = 0.1f;
+        // random image and mask
+        Mat image = new Mat(h, w, CvType.CV_8UC3);
+        Core.randu(image, 0, 256);
+        Mat mat = new Mat(h, w, CvType.CV_8UC1);
+        Core.randu(mat, 0, 2);
+        // enough grids for a parallel merge, each sampled in a random window
+        Random random = new Random(1);
+        listColorGrids = new ArrayList<>();
+        for (int i=0; i<40; i++)
+        {
+            ColorGrid colorGrid = new ColorGrid(w, h, reductionFactor);
+            int x = random.nextInt(w - 10);
+            int y = random.nextInt(h - 10);
+            colorGrid.addColorSamples(image, new Mask(mat, new Rect(x, y, 1 + random.nextInt(w - x), 1 + random.nextInt(h - y))));
+            listColorGrids.add(colorGrid);
+        }
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of mergeColorGrids method, of class GridMerger.
+     */
+    @Test
+    public void testMergeColorGrids()
+    {
+        System.out.println("mergeColorGrids");
+
+        // sequential merge
+        ColorGrid expected = (ColorGrid)listColorGrids.get(0).clone();
+        for (int i=1; i<listColorGrids.size(); i++)
+            expected.merge(listColorGrids.get(i));
+
+        ColorGrid merged = GridMerger.mergeColorGrids(listColorGrids);
+        Mat diff = new Mat();
+        Core.absdiff(expected.getSamplesMatrix(), merged.getSamplesMatrix(), diff);
+        Assert.assertEquals(0, Core.countNonZero(diff));
+        Core.absdiff(expected.getSumsMatrix(), merged.getSumsMatrix(), diff);
+        Assert.assertEquals(0.0, Core.norm(diff, Core.NORM_INF), 0.0);
+        Assert.assertEquals(expected.getSampledWindow(), merged.getSampledWindow());
+        Assert.assertEquals(expected.getTotalSamples(), merged.getTotalSamples());
+        Assert.assertEquals(expected.getGlobalColor(), merged.getGlobalColor());
+        // given grids not modified
+        Assert.assertNotSame(listColorGrids.get(0), merged);
+        Assert.assertTrue(listColorGrids.get(0).getTotalSamples() < merged.getTotalSamples());
+    }
+
+    /**
+     * Test of mergeSampleGrids method, of class GridMerger.
+     */
+    @Test
+    public void testMergeSampleGrids()
+    {
+        System.out.println("mergeSampleGrids");
+
+        List<SampleGrid> listSampleGrids = new ArrayList<>();
+        SampleGrid expected = new SampleGrid(w, h, reductionFactor);
+        for (ColorGrid colorGrid : listColorGrids)
+        {
+            SampleGrid sampleGrid = new SampleGrid(w, h, reductionFactor);
+            sampleGrid.merge(colorGrid);
+            listSampleGrids.add(sampleGrid);
+            expected.merge(sampleGrid);
+        }
+
+        SampleGrid merged = GridMerger.mergeSampleGrids(listSampleGrids);
+        Mat diff = new Mat();
+        Core.absdiff(expected.getSamplesMatrix(), merged.getSamplesMatrix(), diff);
+        Assert.assertEquals(0, Core.countNonZero(diff));
+        Assert.assertEquals(expected.getSampledWindow(), merged.getSampledWindow());
+        Assert.assertEquals(expected.getTotalSamples(), merged.getTotalSamples());
+        // grids of different size can't be merged
+        List<SampleGrid> listWrongSizes = new ArrayList<>(listSampleGrids);
+        listWrongSizes.add(new SampleGrid(w/2, h, reductionFactor));
+        try {
+            GridMerger.mergeSampleGrids(listWrongSizes);
+            Assert.fail();
+        }
+        catch (IllegalArgumentException e) {
+        }
+        // neither grids of mixed classes
+        List<SampleGrid> listMixed = new ArrayList<>(listColorGrids);
+        listMixed.add(new SampleGrid(w, h, reductionFactor));
+        try {
+            GridMerger.mergeSampleGrids(listMixed);
+            Assert.fail();
+        }
+        catch (IllegalArgumentException e) {
+        }
+    }
+}
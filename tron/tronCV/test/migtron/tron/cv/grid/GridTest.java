@@ -89,6 +89,55 @@ public class GridTest
         Assert.assertTrue(true);
     }    
     
+    /**
+     * Test of focus method mapping, of class Grid.
+     */
+    @Test
+    public void testFocusMapping() 
+    {
+        System.out.println("focusMapping");
+
+        Grid cloned = (Grid)grid.clone();
+        // each matrix position maps to the truncated reduced position
+        for (int y=0; y<h; y++)
+            for (int x=0; x<w; x++)
+            {
+                Assert.assertTrue(grid.focus(x, y));
+                Assert.assertEquals((int)(x*grid.getReductionFactor()), grid.getFocus().x);
+                Assert.assertEquals((int)(y*grid.getReductionFactor()), grid.getFocus().y);
+                // clones map equally
+                Assert.assertTrue(cloned.focus(x, y));
+                Assert.assertEquals(grid.getFocus(), cloned.getFocus());
+            }
+        // positions out of the represented matrix are rejected
+        Assert.assertFalse(grid.focus(w, 0));
+        Assert.assertFalse(grid.focus(0, h));
+        Assert.assertFalse(grid.focus(-1, 0));
+    }    
+    
+    /**
+     * Test of shared geometry, of class Grid.
+     */
+    @Test
+    public void testSharedGeometry() 
+    {
+        System.out.println("sharedGeometry");
+
+        // grids of same parameters (and their clones) share the geometry
+        Grid grid2 = new Grid(w, h, grid.getReductionFactor());
+        Grid cloned = (Grid)grid.clone();
+        Assert.assertSame(grid.getGeometry(), grid2.getGeometry());
+        Assert.assertSame(grid.getGeometry(), cloned.getGeometry());
+        // but not their focus
+        grid.focus(10, 10);
+        cloned.focus(50, 30);
+        Assert.assertEquals(new java.awt.Point(1, 1), grid.getFocus());
+        Assert.assertEquals(new java.awt.Point(5, 3), cloned.getFocus());
+        // grids of different parameters don't share it
+        Grid grid3 = new Grid(w, h, 0.2f);
+        Assert.assertNotSame(grid.getGeometry(), grid3.getGeometry());
+    }    
+    
     // walks a grid covering all points in a specified window (defined by a top-left point (x0, y0) and with w x h dimensions)
     private void doWalk(Grid grid, int x0, int y0, int w, int h)
     {
@@ -8,6 +8,7 @@ import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.opencv.core.Rect;
 
 /**
  *
@@ -60,4 +61,31 @@ public class MatrixTest {
         int expSmalls = 2;
         Assert.assertTrue((oks == expOks) && (smalls == expSmalls));
     }
+
+    /**
+     * Test of setRadius method, of class Matrix.
+     */
+    @Test
+    public void testSetRadius() 
+    {
+        System.out.println("setRadius");
+        
+        Matrix matrix = new Matrix(10, 6);
+        matrix.focus(5, 3);
+        matrix.setRadius(2);
+        // focus window updated with the new radius
+        Assert.assertEquals(new Rect(3, 1, 5, 5), matrix.getFocusWindow());
+        // windows limited to the matrix borders
+        matrix.focus(0, 5);
+        Assert.assertEquals(new Rect(0, 3, 3, 3), matrix.getFocusWindow());
+        matrix.focus(9, 0);
+        Assert.assertEquals(new Rect(7, 0, 3, 3), matrix.getFocusWindow());
+        // single node windows
+        matrix.setRadius(0);
+        Assert.assertEquals(new Rect(9, 0, 1, 1), matrix.getFocusWindow());
+        // single column matrices
+        Matrix column = new Matrix(1, 6, 3);
+        column.focus(0, 2);
+        Assert.assertEquals(new Rect(0, 0, 1, 6), column.getFocusWindow());
+    }
 }
@@ -14,6 +14,9 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
 import org.opencv.core.Rect;
 
 /**
@@ -165,6 +168,84 @@ public class SampleGridTest
         Assert.assertEquals(samples, samples1+samples2);
     }
     
+    /**
+     * Test of computeSamples method, of class SampleGrid.
+     */
+    @Test
+    public void testComputeSamples() 
+    {
+        System.out.println("computeSamples");
+        
+        int x0 = 10;
+        int y0 = 10;
+        int width = 20;
+        int height = 20;
+        doWalk(sampleGrid, x0, y0, width, height);
+        
+        // all samples inside the sampled window
+        Rect window = sampleGrid.getSampledWindow();
+        Assert.assertEquals(width*height, sampleGrid.computeSamples(window));
+        // first sampled node
+        Assert.assertEquals(100, sampleGrid.computeSamples(new Rect(window.x, window.y, 1, 1)));
+
+        // table rebuilt after new samples
+        doWalk(sampleGrid, x0, y0, width, 1);
+        Assert.assertEquals(width*(height+1), sampleGrid.computeSamples(window));
+    }
+    
+    /**
+     * Test of addSamples method, of class SampleGrid.
+     */
+    @Test
+    public void testAddSamples() 
+    {
+        System.out.println("addSamples");
+        
+        // random mask partially out of the represented matrix
+        Mat mat = new Mat(h+20, w+20, CvType.CV_8UC1);
+        Core.randu(mat, 0, 2);
+        Rect window = new Rect(35, 12, w-25, h);
+        Mask mask = new Mask(mat, window);
+        SampleGrid sampleGrid2 = (SampleGrid)sampleGrid.clone();
+        doWalk(sampleGrid, 30, 20, 10, 10);
+        doWalk(sampleGrid2, 30, 20, 10, 10);
+
+        // bulk sampling must equal the sampling of each masked pixel
+        sampleGrid.addSamples(mask);
+        byte[] pixel = new byte[1];
+        for (int y=window.y; y<window.y+window.height; y++)
+            for (int x=window.x; x<window.x+window.width; x++)
+            {
+                mat.get(y, x, pixel);
+                if (pixel[0] != 0 && sampleGrid2.focus(x, y))
+                    sampleGrid2.addSample();
+            }
+        Mat diff = new Mat();
+        Core.absdiff(sampleGrid.getSamplesMatrix(), sampleGrid2.getSamplesMatrix(), diff);
+        Assert.assertEquals(0, Core.countNonZero(diff));
+        Assert.assertEquals(sampleGrid2.getSampledWindow(), sampleGrid.getSampledWindow());
+        Assert.assertEquals(sampleGrid2.getTotalSamples(), sampleGrid.getTotalSamples());
+    }
+    
+    /**
+     * Test of getSamplesMatrix method, of class SampleGrid.
+     */
+    @Test
+    public void testGetSamplesMatrix() 
+    {
+        System.out.println("getSamplesMatrix");
+        
+        // the matrix view follows the samples after each change
+        doWalk(sampleGrid, 0, 0, 10, 10);
+        Assert.assertEquals(100, (int)Core.sumElems(sampleGrid.getSamplesMatrix()).val[0]);
+        doWalk(sampleGrid, 0, 0, 10, 10);
+        Assert.assertEquals(200, (int)Core.sumElems(sampleGrid.getSamplesMatrix()).val[0]);
+        SampleGrid cloned = (SampleGrid)sampleGrid.clone();
+        sampleGrid.clear();
+        Assert.assertEquals(0, (int)Core.sumElems(sampleGrid.getSamplesMatrix()).val[0]);
+        Assert.assertEquals(200, (int)Core.sumElems(cloned.getSamplesMatrix()).val[0]);
+    }
+    
     // walks a sampled grid covering all points in a specified window (defined by a top-left point (x0, y0) and with w x h dimensions)
     private void doWalk(SampleGrid sampleGrid, int x0, int y0, int w, int h)
     {
@@ -62,20 +62,20 @@ public class Body extends ColorBlob implements Cloneable
     {
         // merge color blob part
         super.merge((ColorBlob)oBody);
-        // merge mask    
+        // merge mask (its moments are incrementally updated)
         mask.merge(oBody.mask);
-        // no need to update the blob (it's been merged internally)
+        // get the exact blob from the merged mask moments (no rescan needed)
+        updateBlob();
     }
 
     // compute the overlapped area between this body and another one
     public int computeOverlap(Body body)
     {
-        Mask mask1 = (Mask)mask.clone();
-        mask1.intersect(body.getMask());
-        return mask1.computeMass();
+        return mask.countOverlap(body.mask);
     }
 
     // recomputes the blob from the body's mask
+    // the mask moments are computed once (cached by the mask) and then reused for both ellipse and mass
     private void updateBlob()
     {
         Ellipse ellipse = mask.computeEllipse();
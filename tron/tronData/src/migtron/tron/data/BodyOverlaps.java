@@ -0,0 +1,79 @@
+/*
+ *  Copyright (C) 2019 by Migtron Robotics   
+ *  albarral@migtron.com
+ */
+package migtron.tron.data;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import migtron.tron.cv.Window;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+/**
+* Utility class to compute the overlaps between two sets of bodies.
+* The results are given as float matrices (rows for the first set, columns for the second one), ready to be used by MatrixUtils.getCorrespondences().
+* Pairs of bodies whose windows don't overlap are skipped, and the remaining pairs are computed in parallel.
+* @author albarral
+ */
+
+public class BodyOverlaps
+{
+    // compute the matrix of overlapped areas between two sets of bodies
+    public static Mat computeOverlapMatrix(List<? extends Body> bodies1, List<? extends Body> bodies2)
+    {
+        return computeMatrix(bodies1, bodies2, false);
+    }
+
+    // compute the matrix of overlap fractions between two sets of bodies
+    // each element is the fraction of the row body overlapped by the column body
+    public static Mat computeOverlapFractionMatrix(List<? extends Body> bodies1, List<? extends Body> bodies2)
+    {
+        return computeMatrix(bodies1, bodies2, true);
+    }
+
+    // compute the overlaps matrix (absolute or fractional)
+    private static Mat computeMatrix(List<? extends Body> bodies1, List<? extends Body> bodies2, boolean bfraction)
+    {
+        int rows = bodies1.size();
+        int cols = bodies2.size();
+        float[] data = new float[rows*cols];
+
+        // get all windows first (avoids repeated list accesses inside the parallel loop)
+        Body[] array1 = bodies1.toArray(new Body[rows]);
+        Body[] array2 = bodies2.toArray(new Body[cols]);
+        Rect[] windows1 = new Rect[rows];
+        Rect[] windows2 = new Rect[cols];
+        for (int i=0; i<rows; i++)
+            windows1[i] = array1[i].getMask().getWindow();
+        for (int j=0; j<cols; j++)
+            windows2[j] = array2[j].getMask().getWindow();
+
+        // compute matrix rows in parallel (each row is written by a single task)
+        IntStream.range(0, rows).parallel().forEach(i ->
+        {
+            Body body1 = array1[i];
+            int mass1 = body1.getMask().computeMass();
+            for (int j=0; j<cols; j++)
+            {
+                // skip pairs with no overlapped windows
+                if (Window.getOverlapArea(windows1[i], windows2[j]) == 0)
+                    continue;
+
+                int overlap = body1.computeOverlap(array2[j]);
+                if (bfraction)
+                    data[i*cols + j] = (mass1 != 0) ? (float)overlap / mass1 : 0.0f;
+                else
+                    data[i*cols + j] = overlap;
+            }
+        });
+
+        Mat mat = Mat.zeros(rows, cols, CvType.CV_32FC1);
+        if (data.length != 0)
+            mat.put(0, 0, data);
+        return mat;
+    }
+}
@@ -4,7 +4,10 @@
  */
 package migtron.tron.data;
 
+import java.util.ArrayList;
+import java.util.List;
 import migtron.tron.cv.grid.ColorGrid;
+import migtron.tron.cv.grid.GridMerger;
 import migtron.tron.math.Vec3f;
 
 /**
@@ -58,6 +61,27 @@ public class ColorBody extends Body implements Cloneable
         updateBlobColor();
     }
 
+    // merge this body with a list of bodies
+    // body parts are merged one by one, but all color grids are merged at once (in parallel for long lists) and the blob color is computed just once
+    // as in single merges, color grids of different size are skipped
+    public void merge(List<ColorBody> listColorBodies)
+    {
+        List<ColorGrid> listColorGrids = new ArrayList<>();
+        listColorGrids.add(colorGrid);
+        for (ColorBody colorBody : listColorBodies)
+        {
+            // merge body part
+            super.merge((Body)colorBody);
+            ColorGrid colorGrid2 = colorBody.colorGrid;
+            if (colorGrid2.geWidth() == colorGrid.geWidth() && colorGrid2.getHeight() == colorGrid.getHeight())
+                listColorGrids.add(colorGrid2);
+        }
+        // merge color grids
+        colorGrid = GridMerger.mergeColorGrids(listColorGrids);
+        // recompute blob color from new color grid
+        updateBlobColor();
+    }
+
     // recompute the blob color from the color grid
     private void updateBlobColor()    
     {
@@ -0,0 +1,152 @@
+/*
+ *  Copyright (C) 2019 by Migtron Robotics   
+ *  albarral@migtron.com
+ */
+package migtron.tron.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import migtron.tron.cv.Mask;
+import migtron.tron.cv.NativeOpenCV;
+import migtron.tron.math.Vec3f;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+/**
+ *
+ * @author albarral
+ */
+public class BodyOverlapsTest 
+{
+    private List<Body> listBodies1;
+    private List<Body> listBodies2;
+    
+    public BodyOverlapsTest() {
+    }
+    
+    @BeforeClass
+    public static void setUpClass() {
+        NativeOpenCV.load();
+    }
+    
+    @AfterClass
+    public static void tearDownClass() {
+    }
+    
+    @Before
+    public void setUp() {
+        int w = 200;
+        int h = 150;
+        Random random = new Random(1);
+        Mat mat1 = createRandomMat(w, h, random);
+        Mat mat2 = createRandomMat(w, h, random);
+        // bodies at random windows (overlapped, touching and disjoint ones)
+        listBodies1 = new ArrayList<>();
+        listBodies2 = new ArrayList<>();
+        for (int i=0; i<12; i++)
+            listBodies1.add(createBody(mat1, createRandomWindow(w, h, random)));
+        for (int i=0; i<10; i++)
+            listBodies2.add(createBody(mat2, createRandomWindow(w, h, random)));
+        // a body touching the first one (side by side)
+        Rect window = listBodies1.get(0).getMask().getWindow();
+        listBodies2.add(createBody(mat2, new Rect(window.x + window.width, window.y, 10, window.height)));
+        // an empty body
+        listBodies2.add(createBody(Mat.zeros(h, w, CvType.CV_8UC1), new Rect(0, 0, w, h)));
+    }
+    
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of computeOverlapMatrix method, of class BodyOverlaps.
+     */
+    @Test
+    public void testComputeOverlapMatrix() 
+    {
+        System.out.println("computeOverlapMatrix");
+        
+        Mat mat = BodyOverlaps.computeOverlapMatrix(listBodies1, listBodies2);
+        Assert.assertEquals(listBodies1.size(), mat.rows());
+        Assert.assertEquals(listBodies2.size(), mat.cols());
+        int overlaps = 0;
+        for (int i=0; i<listBodies1.size(); i++)
+        {
+            for (int j=0; j<listBodies2.size(); j++)
+            {
+                // same as pairwise overlaps
+                int overlap = listBodies1.get(i).computeOverlap(listBodies2.get(j));
+                Assert.assertEquals(overlap, mat.get(i, j)[0], 0.0);
+                if (overlap != 0)
+                    overlaps++;
+            }
+        }
+        // some pairs overlap, some don't
+        Assert.assertTrue(overlaps > 0 && overlaps < mat.total());
+        Assert.assertEquals(0.0, mat.get(0, listBodies2.size()-2)[0], 0.0);
+    }
+
+    /**
+     * Test of computeOverlapFractionMatrix method, of class BodyOverlaps.
+     */
+    @Test
+    public void testComputeOverlapFractionMatrix() 
+    {
+        System.out.println("computeOverlapFractionMatrix");
+        
+        Mat mat = BodyOverlaps.computeOverlapFractionMatrix(listBodies1, listBodies2);
+        Assert.assertEquals(listBodies1.size(), mat.rows());
+        Assert.assertEquals(listBodies2.size(), mat.cols());
+        for (int i=0; i<listBodies1.size(); i++)
+        {
+            Body body1 = listBodies1.get(i);
+            for (int j=0; j<listBodies2.size(); j++)
+            {
+                // same as pairwise overlap fractions
+                float fraction = (float)body1.computeOverlap(listBodies2.get(j)) / body1.getMask().computeMass();
+                Assert.assertEquals(fraction, mat.get(i, j)[0], 0.0001);
+            }
+        }
+        
+        // empty lists
+        mat = BodyOverlaps.computeOverlapFractionMatrix(listBodies1, new ArrayList<Body>());
+        Assert.assertEquals(0, mat.total());
+    }
+
+    // create a body from the given window of a matrix
+    private Body createBody(Mat mat, Rect window)
+    {
+        Mask mask = new Mask(mat, window);
+        ColorBlob colorBlob = new ColorBlob(new java.awt.Point(window.x, window.y), new Vec3f(), mask.computeMass(), new Vec3f());
+        return new Body(colorBlob, mask);
+    }
+
+    // create a random window inside the given size
+    private Rect createRandomWindow(int w, int h, Random random)
+    {
+        int x = random.nextInt(w - 10);
+        int y = random.nextInt(h - 10);
+        return new Rect(x, y, 10 + random.nextInt(w - x - 10), 10 + random.nextInt(h - y - 10));
+    }
+
+    // create a binary matrix with random pixels (half of them set)
+    private Mat createRandomMat(int w, int h, Random random)
+    {
+        byte[] buffer = new byte[w*h];
+        for (int i=0; i<buffer.length; i++)
+            buffer[i] = random.nextBoolean() ? (byte)255 : 0;
+        Mat mat = new Mat(h, w, CvType.CV_8UC1);
+        mat.put(0, 0, buffer);
+        return mat;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ *  Copyright (C) 2019 by Migtron Robotics   
+ *  albarral@migtron.com
+ */
+package migtron.tron.data;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.List;
+import migtron.tron.cv.Mask;
+import migtron.tron.cv.NativeOpenCV;
+import migtron.tron.cv.grid.ColorGrid;
+import migtron.tron.math.Vec3f;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+
+/**
+ *
+ * @author albarral
+ */
+public class ColorBodyTest 
+{
+    private int w;
+    private int h;
+    private List<ColorBody> listColorBodies;
+    
+    public ColorBodyTest() {
+    }
+    
+    @BeforeClass
+    public static void setUpClass() {
+        NativeOpenCV.load();
+    }
+    
+    @AfterClass
+    public static void tearDownClass() {
+    }
+    
+    @Before
+    public void setUp() {
+        w = 100;
+        h = 80;
+        // bodies of different colors in different places
+        listColorBodies = new ArrayList<>();
+        listColorBodies.add(createColorBody(new Rect(5, 5, 30, 20), new Scalar(200, 0, 0), 0.1f));
+        listColorBodies.add(createColorBody(new Rect(20, 15, 40, 30), new Scalar(0, 150, 0), 0.1f));
+        listColorBodies.add(createColorBody(new Rect(50, 40, 45, 35), new Scalar(0, 0, 100), 0.1f));
+        listColorBodies.add(createColorBody(new Rect(10, 50, 20, 20), new Scalar(90, 90, 90), 0.1f));
+    }
+    
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of merge method (list of bodies), of class ColorBody.
+     */
+    @Test
+    public void testMergeList() 
+    {
+        System.out.println("merge list");
+        
+        // one body with a color grid of different size (its grid is skipped, as in single merges)
+        listColorBodies.add(createColorBody(new Rect(70, 5, 20, 20), new Scalar(0, 250, 250), 0.2f));
+
+        ColorBody expected = (ColorBody)listColorBodies.get(0).clone();
+        for (int i=1; i<listColorBodies.size(); i++)
+            expected.merge(listColorBodies.get(i));
+        ColorBody merged = (ColorBody)listColorBodies.get(0).clone();
+        merged.merge(listColorBodies.subList(1, listColorBodies.size()));
+
+        Assert.assertEquals(expected.getMask().computeMass(), merged.getMask().computeMass());
+        Assert.assertEquals(expected.getMask().getWindow(), merged.getMask().getWindow());
+        Assert.assertEquals(expected.getMass(), merged.getMass());
+        ColorGrid colorGrid1 = expected.getColorGrid();
+        ColorGrid colorGrid2 = merged.getColorGrid();
+        Assert.assertEquals(colorGrid1.getTotalSamples(), colorGrid2.getTotalSamples());
+        Assert.assertEquals(colorGrid1.getSampledWindow(), colorGrid2.getSampledWindow());
+        Vec3f color1 = expected.getRGB();
+        Vec3f color2 = merged.getRGB();
+        Assert.assertEquals(color1.getX(), color2.getX(), 0.001f);
+        Assert.assertEquals(color1.getY(), color2.getY(), 0.001f);
+        Assert.assertEquals(color1.getZ(), color2.getZ(), 0.001f);
+    }
+
+    // create a color body of uniform color in the given window
+    private ColorBody createColorBody(Rect window, Scalar color, float reductionFactor)
+    {
+        Mat mat = Mat.zeros(h, w, CvType.CV_8UC1);
+        mat.submat(window).setTo(new Scalar(Body.BODY_VALUE));
+        Mask mask = new Mask(mat, window);
+        Mat image = new Mat(h, w, CvType.CV_8UC3, color);
+        ColorGrid colorGrid = new ColorGrid(w, h, reductionFactor);
+        colorGrid.addColorSamples(image, mask);
+        Vec3f rgb = new Vec3f((float)color.val[0], (float)color.val[1], (float)color.val[2]);
+        Body body = new Body(new ColorBlob(new Point(window.x, window.y), new Vec3f(), mask.computeMass(), rgb), mask);
+        return new ColorBody(body, colorGrid);
+    }
+}
@@ -98,25 +98,49 @@ public class HSVColor
     // compute the Mahalanobis distance between 2 HSV colors using HSV color discriminance
     public float getDistance(Vec3f color1, Vec3f color2)
     {
-        float minSat = Math.min(color1.getY(), color2.getY());
-        float minVal = Math.min(color1.getZ(), color2.getZ());
+        return getDistance(color1.getX(), color1.getY(), color1.getZ(), color2.getX(), color2.getY(), color2.getZ());
+    }
+
+    // kernel: compute the Mahalanobis distance between 2 HSV colors (given by their components) using HSV color discriminance
+    public float getDistance(float hue1, float sat1, float val1, float hue2, float sat2, float val2)
+    {
+        float minSat = Math.min(sat1, sat2);
+        float minVal = Math.min(val1, val2);
 
         float Kgray = tab_gray_correction[(int)minSat];  // reduce H influence if gray region or pixel
         float Kdark = tab_dark_correction[(int)minVal];  // reduce H and S influence if dark region or pixel  
 
         // obtain discriminance components
-        Vec3f disc = hsvDisc.getDiscriminance(color1, color2);
+        float hueDisc = hsvDisc.getHueDisc();
+        float satDisc = hsvDisc.getSaturationDisc(Math.max(sat1, sat2));
+        float valDisc = hsvDisc.getValueDisc(Math.max(val1, val2));
 
         // use discriminance and correction factors
-        float hueDif = Angle.cyclicDifference(color1.getX() - color2.getX()); // cyclic hue correction
-        hueDif = Kgray * Kdark * hueDif / disc.getX();
-        float satDif = Kdark * (color1.getY() - color2.getY()) / disc.getY();
-        float valDif = (color1.getZ() - color2.getZ()) / disc.getZ();
+        float hueDif = Angle.cyclicDifference(hue1 - hue2); // cyclic hue correction
+        hueDif = Kgray * Kdark * hueDif / hueDisc;
+        float satDif = Kdark * (sat1 - sat2) / satDisc;
+        float valDif = (val1 - val2) / valDisc;
 
         // mahalanobis distance (with null cross-covariances)
         float dist = (float)Math.sqrt(hueDif*hueDif + satDif*satDif + valDif*valDif);  
         return dist;
     }
+
+    /**
+     * Computes the distances between an HSV color and a batch of HSV colors (same values as the scalar version).
+     * @param color reference HSV color
+     * @param colors HSV colors to compare (interleaved, 3 values per color)
+     * @param distances destination buffer for the distances (one per color)
+     * @param num number of colors to compare
+     */
+    public void getDistances(Vec3f color, float[] colors, float[] distances, int num)
+    {
+        float hue = color.getX();
+        float sat = color.getY();
+        float val = color.getZ();
+        for (int i=0, k=0; i<num; i++, k+=3)
+            distances[i] = getDistance(hue, sat, val, colors[k], colors[k+1], colors[k+2]);
+    }
     
     // converts given HSV color to RGB color
     public static Vec3f toRGB(Vec3f hsvColor)
@@ -56,13 +56,15 @@ public class HSVDiscriminance
         return new Vec3f(hueDisc, getSaturationDisc(color.getY()), getValueDisc(color.getZ()));
     }
     
-    private float getSaturationDisc(float sat)
+    // compute the saturation discriminance for a given saturation
+    public float getSaturationDisc(float sat)
     {
         // limit lower saturation discriminance
         return Math.max(sat * satTolerance, MIN_SAT_DISC);
     }
 
-    private float getValueDisc(float val)
+    // compute the value discriminance for a given value
+    public float getValueDisc(float val)
     {
         // limit lower value discriminance
         return Math.max(val * valTolerance, MIN_VAL_DISC);
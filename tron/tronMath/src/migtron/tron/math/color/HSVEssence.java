@@ -69,19 +69,47 @@ public class HSVEssence
     }
 
     float getDistance(Vec3f hsvColor2)
+    {
+        return getDistance(hsvColor2.getX(), hsvColor2.getY(), hsvColor2.getZ());
+    }
+
+    // kernel: compute the distance to an HSV color (given by its components)
+    public float getDistance(float hue2, float sat2, float val2)
     {
         // obtain discriminance components
-        Vec3f disc = hsvDisc.getDiscriminance(hsvColor);
-        
+        float satDisc = hsvDisc.getSaturationDisc(hsvColor.getY());
+        float valDisc = hsvDisc.getValueDisc(hsvColor.getZ());
+        return getDistance(hue2, sat2, val2, hsvDisc.getHueDisc(), satDisc, valDisc);
+    }
+
+    /**
+     * Computes the distances to a batch of HSV colors (same values as the scalar version).
+     * The discriminance is only computed once (it just depends on the essence color).
+     * @param colors HSV colors to compare (interleaved, 3 values per color)
+     * @param distances destination buffer for the distances (one per color)
+     * @param num number of colors to compare
+     */
+    public void getDistances(float[] colors, float[] distances, int num)
+    {
+        float hueDisc = hsvDisc.getHueDisc();
+        float satDisc = hsvDisc.getSaturationDisc(hsvColor.getY());
+        float valDisc = hsvDisc.getValueDisc(hsvColor.getZ());
+        for (int i=0, k=0; i<num; i++, k+=3)
+            distances[i] = getDistance(colors[k], colors[k+1], colors[k+2], hueDisc, satDisc, valDisc);
+    }
+
+    // compute the distance to an HSV color with the given discriminance components
+    private float getDistance(float hue2, float sat2, float val2, float hueDisc, float satDisc, float valDisc)
+    {
         float dist;
         switch (type)
         {
             case eTYPE_COLOR:
             {
-                float hueDif = Angle.cyclicDifference(hsvColor.getX() - hsvColor2.getX()); // cyclic hue correction                                
-                hueDif = hueDif / disc.getX();
-                float satDif = Math.abs(hsvColor.getY() - hsvColor2.getY()) / disc.getY();
-                float valDif = Math.abs(hsvColor.getZ() - hsvColor2.getZ()) / disc.getZ();
+                float hueDif = Angle.cyclicDifference(hsvColor.getX() - hue2); // cyclic hue correction                                
+                hueDif = hueDif / hueDisc;
+                float satDif = Math.abs(hsvColor.getY() - sat2) / satDisc;
+                float valDif = Math.abs(hsvColor.getZ() - val2) / valDisc;
                 // maximum of the 3 distances
                 dist = Math.max(satDif, valDif);
                 dist = Math.max(hueDif, dist);
@@ -90,8 +118,8 @@ public class HSVEssence
 
             case eTYPE_GREY:
             {
-                float satDif = Math.abs(hsvColor.getY() - hsvColor2.getY()) / disc.getY();
-                float valDif = Math.abs(hsvColor.getZ() - hsvColor2.getZ()) / disc.getZ();
+                float satDif = Math.abs(hsvColor.getY() - sat2) / satDisc;
+                float valDif = Math.abs(hsvColor.getZ() - val2) / valDisc;
                 // maximum of saturation and value distances
                 dist = Math.max(satDif, valDif);
             }
@@ -99,7 +127,7 @@ public class HSVEssence
 
             case eTYPE_DARK:
             {
-                float valDif = Math.abs(hsvColor.getZ() - hsvColor2.getZ()) / disc.getZ();
+                float valDif = Math.abs(hsvColor.getZ() - val2) / valDisc;
                 // value distance
                 dist = valDif;
             }
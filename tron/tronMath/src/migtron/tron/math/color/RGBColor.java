@@ -85,10 +85,14 @@ public class RGBColor
     // converts given RGB color to HSV color
     public static Vec3f toHSV(Vec3f rgbColor)
     {
-        float r = rgbColor.getX();
-        float g = rgbColor.getY();
-        float b = rgbColor.getZ();
+        Vec3f hsvColor = new Vec3f();
+        toHSV(rgbColor.getX(), rgbColor.getY(), rgbColor.getZ(), hsvColor.data, 0);
+        return hsvColor;
+    }    
 
+    // kernel: converts given RGB values to HSV, written in the given buffer (starting at offset)
+    public static void toHSV(float r, float g, float b, float[] hsv, int offset)
+    {
         float min = Math.min(r, g);
         min = Math.min(min, b);
         float max = Math.max(r, g);
@@ -125,6 +129,74 @@ public class RGBColor
             }		
         }		
         
-        return new Vec3f(hue, sat, value);
+        hsv[offset] = hue;
+        hsv[offset+1] = sat;
+        hsv[offset+2] = value;
     }    
+
+    /**
+     * Converts a batch of 8 bit RGB pixels to HSV.
+     * The divisions are taken from exact lookup tables (indexed by the integer operands), so results are identical to the scalar conversion.
+     * @param rgb RGB pixels (interleaved, 3 bytes per pixel)
+     * @param hsv destination buffer for the HSV values (interleaved, 3 values per pixel)
+     * @param pixels number of pixels to convert
+     */
+    public static void toHSV(byte[] rgb, float[] hsv, int pixels)
+    {
+        float[] hues = HSVTables.hues;
+        float[] quotients = HSVTables.quotients;
+        float[] sats = HSVTables.sats;
+        for (int k=0; k<3*pixels; k+=3)
+        {
+            int r = rgb[k] & 0xFF;
+            int g = rgb[k+1] & 0xFF;
+            int b = rgb[k+2] & 0xFF;
+            int max = Math.max(Math.max(r, g), b);
+            int delta = max - Math.min(Math.min(r, g), b);
+            float hue = 0;
+            if (delta != 0)
+            {
+                if (max == r) 
+                    hue = hues[(g - b + 255)*256 + delta];
+                else if (max == g) 
+                    hue = 60 * (2 + quotients[(b - r + 255)*256 + delta]);
+                else 
+                    hue = 60 * (4 + quotients[(r - g + 255)*256 + delta]);
+                
+                if( hue < 0)                
+                    hue += 360;
+            }
+            hsv[k] = hue;
+            hsv[k+1] = sats[max*256 + delta];
+            hsv[k+2] = max;
+        }
+    }
+
+    // lookup tables for 8 bit HSV conversions, indexed by (numerator, denominator) pairs (built on first use)
+    // each entry is computed with the same float operations as the scalar conversion
+    private static class HSVTables
+    {
+        static final float[] hues = new float[511*256];        // 60 * num / delta (num in [-255, 255], delta in [1, 255])
+        static final float[] quotients = new float[511*256];   // num / delta (num in [-255, 255], delta in [1, 255])
+        static final float[] sats = new float[256*256];        // 255 * delta / max (max in [1, 255], delta in [0, max])
+
+        static
+        {
+            for (int num=-255; num<=255; num++)
+                for (int delta=1; delta<256; delta++)
+                {
+                    float n = num;
+                    float d = delta;
+                    hues[(num + 255)*256 + delta] = 60 * n / d;
+                    quotients[(num + 255)*256 + delta] = n / d;
+                }
+            for (int max=1; max<256; max++)
+                for (int delta=0; delta<=max; delta++)
+                {
+                    float m = max;
+                    float d = delta;
+                    sats[max*256 + delta] = 255 * d / m;
+                }
+        }
+    }
 }
@@ -0,0 +1,93 @@
+/*
+ *  Copyright (C) 2019 by Migtron Robotics   
+ *  albarral@migtron.com
+ */
+package migtron.tron.math.color;
+
+import java.util.Random;
+import migtron.tron.math.Angle;
+import migtron.tron.math.Vec3f;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author albarral
+ */
+public class HSVColorTest 
+{
+    private int num;
+    private float[] colors;
+    
+    public HSVColorTest() {
+    }
+        
+    @Before
+    public void setUp() 
+    {
+        // random HSV colors (interleaved)
+        num = 10000;
+        colors = new float[3*num];
+        Random random = new Random(1);
+        for (int k=0; k<3*num; k+=3)
+        {
+            colors[k] = 360*random.nextFloat();
+            colors[k+1] = 255*random.nextFloat();
+            colors[k+2] = 255*random.nextFloat();
+        }
+    }
+    
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of getDistances method, of class HSVColor.
+     */
+    @Test
+    public void testGetDistances() 
+    {
+        System.out.println("getDistances");
+        
+        for (HSVColor.eDiscriminance discLevel : HSVColor.eDiscriminance.values())
+        {
+            HSVColor hsvColor = new HSVColor(discLevel);
+            Vec3f color = new Vec3f(colors[0], colors[1], colors[2]);
+            float[] distances = new float[num];
+            hsvColor.getDistances(color, colors, distances, num);
+            // same bits as the distance computed with the discriminance vector
+            for (int i=0, k=0; i<num; i++, k+=3)
+            {
+                Vec3f color2 = new Vec3f(colors[k], colors[k+1], colors[k+2]);
+                float expected = getDistance(hsvColor, color, color2);
+                assertEquals(Float.floatToIntBits(expected), Float.floatToIntBits(distances[i]));
+                assertEquals(Float.floatToIntBits(expected), Float.floatToIntBits(hsvColor.getDistance(color, color2)));
+            }
+        }
+    }
+
+    // distance computed with the discriminance vector (reference)
+    private float getDistance(HSVColor hsvColor, Vec3f color1, Vec3f color2)
+    {
+        float Kgray = getCorrection(Math.min(color1.getY(), color2.getY()), HSVColor.SAT_GRAY);
+        float Kdark = getCorrection(Math.min(color1.getZ(), color2.getZ()), HSVColor.VAL_DARK);
+        Vec3f disc = hsvColor.getDiscriminance().getDiscriminance(color1, color2);
+        float hueDif = Angle.cyclicDifference(color1.getX() - color2.getX());
+        hueDif = Kgray * Kdark * hueDif / disc.getX();
+        float satDif = Kdark * (color1.getY() - color2.getY()) / disc.getY();
+        float valDif = (color1.getZ() - color2.getZ()) / disc.getZ();
+        return (float)Math.sqrt(hueDif*hueDif + satDif*satDif + valDif*valDif);
+    }
+
+    // correction factor (as in the correction tables): 0 under the threshold, growing to 1 in the next 50 units
+    private float getCorrection(float value, int threshold)
+    {
+        int i = (int)value;
+        if (i < threshold)
+            return 0.0f;
+        return Math.min((float)((i - threshold) / 50.0), 1.0f);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ *  Copyright (C) 2019 by Migtron Robotics   
+ *  albarral@migtron.com
+ */
+package migtron.tron.math.color;
+
+import java.util.Random;
+import migtron.tron.math.Angle;
+import migtron.tron.math.Vec3f;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author albarral
+ */
+public class HSVEssenceTest 
+{
+    private int num;
+    private float[] colors;
+    
+    public HSVEssenceTest() {
+    }
+        
+    @Before
+    public void setUp() 
+    {
+        // random HSV colors (interleaved)
+        num = 10000;
+        colors = new float[3*num];
+        Random random = new Random(1);
+        for (int k=0; k<3*num; k+=3)
+        {
+            colors[k] = 360*random.nextFloat();
+            colors[k+1] = 255*random.nextFloat();
+            colors[k+2] = 255*random.nextFloat();
+        }
+    }
+    
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of getDistances method, of class HSVEssence.
+     */
+    @Test
+    public void testGetDistances() 
+    {
+        System.out.println("getDistances");
+        
+        // colored, grey and dark essences
+        Vec3f[] essenceColors = {new Vec3f(200, 180, 150), new Vec3f(200, 20, 150), new Vec3f(200, 180, 20)};
+        for (Vec3f essenceColor : essenceColors)
+        {
+            HSVEssence hsvEssence = new HSVEssence(essenceColor);
+            float[] distances = new float[num];
+            hsvEssence.getDistances(colors, distances, num);
+            // same bits as the distance computed with the discriminance vector
+            for (int i=0, k=0; i<num; i++, k+=3)
+            {
+                Vec3f color2 = new Vec3f(colors[k], colors[k+1], colors[k+2]);
+                float expected = getDistance(hsvEssence, color2);
+                assertEquals(Float.floatToIntBits(expected), Float.floatToIntBits(distances[i]));
+                assertEquals(Float.floatToIntBits(expected), Float.floatToIntBits(hsvEssence.getDistance(color2)));
+            }
+        }
+    }
+
+    // distance computed with the discriminance vector (reference)
+    private float getDistance(HSVEssence hsvEssence, Vec3f color2)
+    {
+        Vec3f color = hsvEssence.getColor();
+        Vec3f disc = hsvEssence.getDiscriminance().getDiscriminance(color);
+        float hueDif = Angle.cyclicDifference(color.getX() - color2.getX()) / disc.getX();
+        float satDif = Math.abs(color.getY() - color2.getY()) / disc.getY();
+        float valDif = Math.abs(color.getZ() - color2.getZ()) / disc.getZ();
+        switch (hsvEssence.getType())
+        {
+            case eTYPE_COLOR:
+                return Math.max(hueDif, Math.max(satDif, valDif));
+            case eTYPE_GREY:
+                return Math.max(satDif, valDif);
+            default:
+                return valDif;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ *  Copyright (C) 2019 by Migtron Robotics   
+ *  albarral@migtron.com
+ */
+package migtron.tron.math.color;
+
+import migtron.tron.math.Vec3f;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author albarral
+ */
+public class RGBColorTest 
+{
+    public RGBColorTest() {
+    }
+        
+    @Before
+    public void setUp() {
+    }
+    
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of toHSV method (scalar), of class RGBColor.
+     */
+    @Test
+    public void testToHSV() 
+    {
+        System.out.println("toHSV");
+        
+        assertEquals(new Vec3f(0, 255, 255), RGBColor.toHSV(new Vec3f(255, 0, 0)));
+        assertEquals(new Vec3f(120, 255, 255), RGBColor.toHSV(new Vec3f(0, 255, 0)));
+        assertEquals(new Vec3f(240, 255, 128), RGBColor.toHSV(new Vec3f(0, 0, 128)));
+        assertEquals(new Vec3f(300, 255, 255), RGBColor.toHSV(new Vec3f(255, 0, 255)));
+        assertEquals(new Vec3f(0, 0, 100), RGBColor.toHSV(new Vec3f(100, 100, 100)));
+        assertEquals(new Vec3f(0, 0, 0), RGBColor.toHSV(new Vec3f(0, 0, 0)));
+    }
+
+    /**
+     * Test of toHSV method (batch), of class RGBColor.
+     */
+    @Test
+    public void testToHSVBatch() 
+    {
+        System.out.println("toHSV batch");
+        
+        // all 8 bit colors (one red value per batch) must give exactly the scalar values
+        int pixels = 256*256;
+        byte[] rgb = new byte[3*pixels];
+        float[] hsv = new float[3*pixels];
+        float[] expected = new float[3];
+        int mismatches = 0;
+        for (int r=0; r<256; r++)
+        {
+            for (int k=0, g=0; g<256; g++)
+                for (int b=0; b<256; b++, k+=3)
+                {
+                    rgb[k] = (byte)r;
+                    rgb[k+1] = (byte)g;
+                    rgb[k+2] = (byte)b;
+                }
+            RGBColor.toHSV(rgb, hsv, pixels);
+            for (int k=0; k<3*pixels; k+=3)
+            {
+                RGBColor.toHSV(rgb[k] & 0xFF, rgb[k+1] & 0xFF, rgb[k+2] & 0xFF, expected, 0);
+                for (int i=0; i<3; i++)
+                    if (Float.floatToIntBits(expected[i]) != Float.floatToIntBits(hsv[k+i]))
+                        mismatches++;
+            }
+        }
+        assertEquals(0, mismatches);
+    }
+}
@@ -0,0 +1,557 @@
+/*
+ *  Copyright (C) 2019 by Migtron Robotics   
+ *  albarral@migtron.com
+ */
+package migtron.tron.test;
+
+import java.awt.Rectangle;
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import migtron.tron.cv.ColorCV;
+import migtron.tron.cv.Mask;
+import migtron.tron.cv.MatrixUtils;
+import migtron.tron.cv.Moments;
+import migtron.tron.cv.Window;
+import migtron.tron.cv.grid.ColorGrid;
+import migtron.tron.cv.grid.GridMerger;
+import migtron.tron.draw.MathDrawer;
+import migtron.tron.math.Ellipse;
+import migtron.tron.math.Vec3f;
+import migtron.tron.math.Vec3i;
+import migtron.tron.math.color.HSVColor;
+import migtron.tron.math.color.RGBColor;
+
+import org.opencv.core.Core;
+import org.opencv.core.Core.MinMaxLocResult;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+
+/**
+* Benchmarks for the performance critical parts of the tron libraries.
+* Each benchmark compares the present implementation against the previous one.
+* @author albarral
+ */
+
+public class TestPerformance
+{
+    String modName;
+    private int w;      // image width
+    private int h;      // image height
+    private int loops;  // repetitions of each measured operation
+
+    public TestPerformance()
+    {
+        modName = "TestPerformance";
+        w = 640;
+        h = 480;
+        loops = 200;
+    }
+
+    public void makeTest()
+    {
+        System.out.println(modName  + ": test start");
+        testMaskMoments();
+        testWindowKernels();
+        testCorrespondences(10);
+        testCorrespondences(100);
+        testCorrespondences(1000);
+        testOptimalCorrespondences(100);
+        testOptimalCorrespondences(1000);
+        testColorGridSampling();
+        testLocalColors();
+        testGridMerges();
+        testHSVConversion();
+        testHSVDistances();
+        System.out.println(modName  + ": test end");
+    }
+
+    // compare the cost of computing a mask's moments (bulk read vs row by row read)
+    private void testMaskMoments()
+    {
+        System.out.println(modName  + ".testMaskMoments() ...");
+
+        Mask mask = new Mask(createBodyMat());
+        Moments moments = new Moments();
+
+        // warm up both paths
+        for (int i=0; i<loops; i++)
+        {
+            mask.computeMoments(moments);
+            computeMomentsByRows(mask.getMat());
+        }
+
+        long t0 = System.nanoTime();
+        for (int i=0; i<loops; i++)
+            mask.computeMoments(moments);
+        long t1 = System.nanoTime();
+        for (int i=0; i<loops; i++)
+            computeMomentsByRows(mask.getMat());
+        long t2 = System.nanoTime();
+
+        System.out.println("mask " + w + "x" + h + ", mass = " + moments.getMass());
+        showCost("moments (bulk read)", t1-t0);
+        showCost("moments (row reads)", t2-t1);
+    }
+
+    // compare the cost of window intersections and unions (primitive kernels vs java rectangles)
+    private void testWindowKernels()
+    {
+        System.out.println(modName  + ".testWindowKernels() ...");
+
+        // random windows inside the image
+        int num = 1000;
+        Random random = new Random(1);
+        Rect[] windows = new Rect[num];
+        for (int i=0; i<num; i++)
+            windows[i] = new Rect(random.nextInt(w), random.nextInt(h), 1 + random.nextInt(w/4), 1 + random.nextInt(h/4));
+        Rect result = new Rect();
+        long check1 = 0, check2 = 0;
+
+        // warm up both paths
+        for (int i=0; i<loops; i++)
+        {
+            check1 += combineByKernels(windows, result);
+            check2 += combineByRectangles(windows);
+        }
+
+        long t0 = System.nanoTime();
+        for (int i=0; i<loops; i++)
+            check1 += combineByKernels(windows, result);
+        long t1 = System.nanoTime();
+        for (int i=0; i<loops; i++)
+            check2 += combineByRectangles(windows);
+        long t2 = System.nanoTime();
+
+        System.out.println(num + " window pairs, same results = " + (check1 == check2));
+        showCost("intersection & union (kernels)", t1-t0);
+        showCost("intersection & union (java rectangles)", t2-t1);
+    }
+
+    // intersect and unite consecutive windows with the primitive kernels
+    private long combineByKernels(Rect[] windows, Rect result)
+    {
+        long sum = 0;
+        for (int i=1; i<windows.length; i++)
+        {
+            Window.intersect(windows[i-1], windows[i], result);
+            sum += result.x + result.y + result.width + result.height;
+            Window.unite(windows[i-1], windows[i], result);
+            sum += result.x + result.y + result.width + result.height;
+        }
+        return sum;
+    }
+
+    // previous intersection and union of consecutive windows, through java rectangles
+    private long combineByRectangles(Rect[] windows)
+    {
+        long sum = 0;
+        for (int i=1; i<windows.length; i++)
+        {
+            Rectangle rect1 = Window.rectangleCV2Java(windows[i-1]);
+            Rectangle rect2 = Window.rectangleCV2Java(windows[i]);
+            Rect result = Window.rectangleJava2CV(rect1.intersection(rect2));
+            sum += result.x + result.y + result.width + result.height;
+            result = Window.rectangleJava2CV(rect1.union(rect2));
+            sum += result.x + result.y + result.width + result.height;
+        }
+        return sum;
+    }
+
+    // compare the cost of computing greedy correspondences for n x n elements (row candidates heap vs repeated minMaxLoc)
+    private void testCorrespondences(int n)
+    {
+        System.out.println(modName  + ".testCorrespondences(" + n + ") ...");
+
+        // random similarity matrix (about half the values above threshold)
+        Random random = new Random(1);
+        float[] data = new float[n*n];
+        for (int i=0; i<data.length; i++)
+            data[i] = random.nextFloat();
+        Mat mat = new Mat(n, n, CvType.CV_32FC1);
+        mat.put(0, 0, data);
+        float threshold = 0.5f;
+        // fewer repetitions for big matrices (the previous solver is cubic)
+        int calls = Math.max(2, Math.min(loops * 10, 1000000 / (n*n)));
+
+        // warm up both paths
+        List<java.awt.Point> list1 = null, list2 = null;
+        for (int i=0; i<calls; i++)
+        {
+            list1 = MatrixUtils.getCorrespondences(mat, threshold);
+            list2 = getCorrespondencesByMinMaxLoc(mat, threshold);
+        }
+
+        long t0 = System.nanoTime();
+        for (int i=0; i<calls; i++)
+            MatrixUtils.getCorrespondences(mat, threshold);
+        long t1 = System.nanoTime();
+        for (int i=0; i<calls; i++)
+            getCorrespondencesByMinMaxLoc(mat, threshold);
+        long t2 = System.nanoTime();
+
+        System.out.println(n + "x" + n + " matrix, correspondences = " + list1.size() + ", same results = " + list1.equals(list2));
+        showCost("correspondences (row candidates heap)", t1-t0, calls);
+        showCost("correspondences (minMaxLoc)", t2-t1, calls);
+    }
+
+    // compare the cost of computing optimal correspondences for n x n elements (sparse vs dense modes, and greedy as reference)
+    // the similarity matrix is sparse (few candidates per row), as when tracking bodies between frames
+    private void testOptimalCorrespondences(int n)
+    {
+        System.out.println(modName  + ".testOptimalCorrespondences(" + n + ") ...");
+
+        // random similarity matrix (4 candidates above threshold per row, around the diagonal)
+        Random random = new Random(1);
+        float[] data = new float[n*n];
+        for (int i=0; i<n; i++)
+            for (int k=0; k<4; k++)
+                data[i*n + Math.floorMod(i + random.nextInt(9) - 4, n)] = 0.5f + 0.5f*random.nextFloat();
+        Mat mat = new Mat(n, n, CvType.CV_32FC1);
+        mat.put(0, 0, data);
+        float threshold = 0.5f;
+        // the dense mode is cubic, so it's skipped for big matrices
+        boolean bdense = (n <= 300);
+        int calls = Math.max(10, Math.min(loops, 1000000 / (n*n)));
+
+        List<java.awt.Point> list1 = null, list2 = null, list3 = null;
+        for (int i=0; i<calls; i++)
+        {
+            list1 = MatrixUtils.getOptimalCorrespondences(mat, threshold, true);
+            if (bdense)
+                list2 = MatrixUtils.getOptimalCorrespondences(mat, threshold, false);
+            list3 = MatrixUtils.getCorrespondences(mat, threshold);
+        }
+
+        long t0 = System.nanoTime();
+        for (int i=0; i<calls; i++)
+            MatrixUtils.getOptimalCorrespondences(mat, threshold, true);
+        long t1 = System.nanoTime();
+        if (bdense)
+            for (int i=0; i<calls; i++)
+                MatrixUtils.getOptimalCorrespondences(mat, threshold, false);
+        long t2 = System.nanoTime();
+        for (int i=0; i<calls; i++)
+            MatrixUtils.getCorrespondences(mat, threshold);
+        long t3 = System.nanoTime();
+
+        System.out.println(n + "x" + n + " matrix, total similarity: optimal = " + getTotal(list1, data, n) + 
+                (bdense ? ", dense = " + getTotal(list2, data, n) : "") + ", greedy = " + getTotal(list3, data, n));
+        showCost("optimal correspondences (sparse)", t1-t0, calls);
+        if (bdense)
+            showCost("optimal correspondences (dense)", t2-t1, calls);
+        showCost("greedy correspondences", t3-t2, calls);
+    }
+
+    // compare the cost of sampling a body into a color grid (bulk mask sampling vs focus and sample per pixel)
+    private void testColorGridSampling()
+    {
+        System.out.println(modName  + ".testColorGridSampling() ...");
+
+        Mat image = new Mat(h, w, CvType.CV_8UC3);
+        Core.randu(image, 0, 256);
+        Mask mask = new Mask(createBodyMat());
+        ColorGrid colorGrid = new ColorGrid(w, h, 0.1f);
+        byte[] pixels = new byte[w*h];
+        byte[] colors = new byte[3*w*h];
+        int calls = 10;
+
+        // warm up both ways
+        for (int i=0; i<=2*calls; i++)
+        {
+            colorGrid.clear();
+            if (i < calls)
+                colorGrid.addColorSamples(image, mask);
+            else
+                addColorSamplesByPixel(colorGrid, image, mask, pixels, colors);
+        }
+
+        long t0 = System.nanoTime();
+        for (int i=0; i<calls; i++)
+        {
+            colorGrid.clear();
+            colorGrid.addColorSamples(image, mask);
+        }
+        long t1 = System.nanoTime();
+        for (int i=0; i<calls; i++)
+        {
+            colorGrid.clear();
+            addColorSamplesByPixel(colorGrid, image, mask, pixels, colors);
+        }
+        long t2 = System.nanoTime();
+
+        System.out.println("body mass = " + mask.computeMass() + ", global color = " + colorGrid.getGlobalColor());
+        showCost("color grid sampling (bulk)", t1-t0, calls);
+        showCost("color grid sampling (per pixel)", t2-t1, calls);
+    }
+
+    // previous color grid sampling, focusing each masked pixel and adding its color
+    private void addColorSamplesByPixel(ColorGrid colorGrid, Mat image, Mask mask, byte[] pixels, byte[] colors)
+    {
+        Rect window = mask.getWindow();
+        mask.getMat().get(0, 0, pixels);
+        image.get(0, 0, colors);
+        for (int y=0; y<window.height; y++)
+            for (int x=0; x<window.width; x++)
+            {
+                int k = y*window.width + x;
+                if (pixels[k] != 0 && colorGrid.focus(window.x + x, window.y + y))
+                {
+                    int c = 3*((window.y + y)*w + window.x + x);
+                    colorGrid.addColorSample(new Vec3i(colors[c] & 0xFF, colors[c+1] & 0xFF, colors[c+2] & 0xFF));
+                }
+            }
+    }
+
+    // compare the cost of getting the local colors of all grid nodes (whole grid box filter vs focusing each node)
+    private void testLocalColors()
+    {
+        System.out.println(modName  + ".testLocalColors() ...");
+
+        Mat image = new Mat(h, w, CvType.CV_8UC3);
+        Core.randu(image, 0, 256);
+        ColorGrid colorGrid = new ColorGrid(w, h, 0.1f);
+        colorGrid.addColorSamples(image, new Mask(createBodyMat()));
+        colorGrid.setRadius(2);
+        int calls = 10;
+
+        // warm up both ways
+        for (int i=0; i<calls; i++)
+        {
+            colorGrid.computeLocalColors();
+            getLocalColorsByNode(colorGrid);
+        }
+
+        long t0 = System.nanoTime();
+        for (int i=0; i<calls; i++)
+            colorGrid.computeLocalColors();
+        long t1 = System.nanoTime();
+        for (int i=0; i<calls; i++)
+            getLocalColorsByNode(colorGrid);
+        long t2 = System.nanoTime();
+
+        showCost("local colors (whole grid)", t1-t0, calls);
+        showCost("local colors (per node)", t2-t1, calls);
+    }
+
+    // get the local colors of all grid nodes focusing each of them (on a clone, as local queries change the focused node)
+    private void getLocalColorsByNode(ColorGrid colorGrid)
+    {
+        ColorGrid cloned = (ColorGrid)colorGrid.clone();
+        for (int y=0; y<h; y+=10)
+            for (int x=0; x<w; x+=10)
+            {
+                cloned.focus(x, y);
+                cloned.getLocalColor();
+            }
+    }
+
+    // compare the cost of merging many color grids (balanced parallel merge vs one by one)
+    private void testGridMerges()
+    {
+        System.out.println(modName  + ".testGridMerges() ...");
+
+        Mat image = new Mat(h, w, CvType.CV_8UC3);
+        Core.randu(image, 0, 256);
+        Mask mask = new Mask(createBodyMat());
+        List<ColorGrid> listColorGrids = new ArrayList<>();
+        for (int i=0; i<64; i++)
+        {
+            ColorGrid colorGrid = new ColorGrid(w, h, 0.1f);
+            colorGrid.addColorSamples(image, mask);
+            listColorGrids.add(colorGrid);
+        }
+        int calls = 20;
+
+        // warm up both ways
+        for (int i=0; i<calls; i++)
+        {
+            GridMerger.mergeColorGrids(listColorGrids);
+            mergeOneByOne(listColorGrids);
+        }
+
+        long t0 = System.nanoTime();
+        for (int i=0; i<calls; i++)
+            GridMerger.mergeColorGrids(listColorGrids);
+        long t1 = System.nanoTime();
+        for (int i=0; i<calls; i++)
+            mergeOneByOne(listColorGrids);
+        long t2 = System.nanoTime();
+
+        System.out.println(listColorGrids.size() + " grids, merged samples = " + mergeOneByOne(listColorGrids).getTotalSamples());
+        showCost("grid merges (parallel tree)", t1-t0, calls);
+        showCost("grid merges (one by one)", t2-t1, calls);
+    }
+
+    // merge a list of color grids one by one
+    private ColorGrid mergeOneByOne(List<ColorGrid> listColorGrids)
+    {
+        ColorGrid merged = (ColorGrid)listColorGrids.get(0).clone();
+        for (int i=1; i<listColorGrids.size(); i++)
+            merged.merge(listColorGrids.get(i));
+        return merged;
+    }
+
+    // compare the cost of converting an image to HSV (batch lookups vs scalar conversions)
+    private void testHSVConversion()
+    {
+        System.out.println(modName  + ".testHSVConversion() ...");
+
+        Mat image = new Mat(h, w, CvType.CV_8UC3);
+        Core.randu(image, 0, 256);
+        byte[] rgb = new byte[3*w*h];
+        image.get(0, 0, rgb);
+        float[] hsv = new float[3*w*h];
+        int calls = 10;
+
+        // warm up all ways
+        for (int i=0; i<calls; i++)
+        {
+            ColorCV.toHSV(image, hsv);
+            toHSVByPixel(rgb, hsv);
+        }
+
+        long t0 = System.nanoTime();
+        for (int i=0; i<calls; i++)
+            ColorCV.toHSV(image, hsv);
+        long t1 = System.nanoTime();
+        for (int i=0; i<calls; i++)
+            toHSVByPixel(rgb, hsv);
+        long t2 = System.nanoTime();
+
+        showCost("HSV conversion (batch)", t1-t0, calls);
+        showCost("HSV conversion (per pixel)", t2-t1, calls);
+    }
+
+    // convert RGB pixels to HSV one by one (as done for single colors)
+    private void toHSVByPixel(byte[] rgb, float[] hsv)
+    {
+        for (int k=0; k<rgb.length; k+=3)
+        {
+            Vec3f hsvColor = RGBColor.toHSV(new Vec3f(rgb[k] & 0xFF, rgb[k+1] & 0xFF, rgb[k+2] & 0xFF));
+            System.arraycopy(hsvColor.data, 0, hsv, k, 3);
+        }
+    }
+
+    // compare the cost of HSV color distances (batch vs one color object per comparison)
+    private void testHSVDistances()
+    {
+        System.out.println(modName  + ".testHSVDistances() ...");
+
+        Mat image = new Mat(h, w, CvType.CV_8UC3);
+        Core.randu(image, 0, 256);
+        int num = w*h;
+        float[] colors = new float[3*num];
+        ColorCV.toHSV(image, colors);
+        float[] distances = new float[num];
+        HSVColor hsvColor = new HSVColor();
+        Vec3f color = new Vec3f(colors[0], colors[1], colors[2]);
+        int calls = 10;
+
+        // warm up both ways
+        for (int i=0; i<calls; i++)
+        {
+            hsvColor.getDistances(color, colors, distances, num);
+            getDistancesByColor(hsvColor, color, colors, distances);
+        }
+
+        long t0 = System.nanoTime();
+        for (int i=0; i<calls; i++)
+            hsvColor.getDistances(color, colors, distances, num);
+        long t1 = System.nanoTime();
+        for (int i=0; i<calls; i++)
+            getDistancesByColor(hsvColor, color, colors, distances);
+        long t2 = System.nanoTime();
+
+        showCost("HSV distances (batch)", t1-t0, calls);
+        showCost("HSV distances (per color)", t2-t1, calls);
+    }
+
+    // compute HSV distances creating a color object for each comparison
+    private void getDistancesByColor(HSVColor hsvColor, Vec3f color, float[] colors, float[] distances)
+    {
+        for (int i=0, k=0; i<distances.length; i++, k+=3)
+            distances[i] = hsvColor.getDistance(color, new Vec3f(colors[k], colors[k+1], colors[k+2]));
+    }
+
+    // sum the similarities of the given correspondences
+    private float getTotal(List<java.awt.Point> listCorrespondences, float[] data, int cols)
+    {
+        float total = 0.0f;
+        for (java.awt.Point point : listCorrespondences)
+            total += data[point.x*cols + point.y];
+        return total;
+    }
+
+    // previous correspondences computation, with a minMaxLoc call per found correspondence
+    private List<java.awt.Point> getCorrespondencesByMinMaxLoc(Mat mat, float threshold)
+    {
+        List<java.awt.Point> listCorrespondences = new java.util.ArrayList<>();
+        Mat mat2 = mat.clone();
+        Scalar zero = new Scalar(0.0);
+        while (true)
+        {
+            MinMaxLocResult result = Core.minMaxLoc(mat2);
+            if (result.maxVal <= threshold)
+                break;
+            int row = (int)result.maxLoc.y;   
+            int col = (int)result.maxLoc.x;   
+            listCorrespondences.add(new java.awt.Point(row, col));
+            mat2.row(row).setTo(zero);                
+            mat2.col(col).setTo(zero);                
+        }
+        return listCorrespondences;
+    }
+
+    // create an image sized mask with a filled ellipse (a typical body)
+    private Mat createBodyMat()
+    {
+        MathDrawer mathDrawer = new MathDrawer(w, h);
+        Ellipse ellipse = new Ellipse(new Point2D.Float(w/2, h/2), new Vec3f(6400, 3600, 1200));
+        mathDrawer.drawFilledEllipse(ellipse);
+        return mathDrawer.getMat();
+    }
+
+    // previous moments computation, reading the mask one row at a time
+    private long computeMomentsByRows(Mat mat)
+    {
+        long m00 = 0, m10 = 0, m01 = 0, m20 = 0, m11 = 0, m02 = 0;
+        int w = mat.width();
+        int h = mat.height();
+        for (int y=0; y<h; y++)
+        {
+            MatOfByte matRow = new MatOfByte(mat.row(y));
+            byte[] row = matRow.toArray();
+            for (int x=0; x<w; x++)
+            {
+              if (row[x] != 0)
+              {
+                m00 ++;
+                m10 += x;
+                m01 += y;
+                m20 += x*x;
+                m11 += x*y;
+                m02 += y*y;
+              }
+            }
+        }
+        return m00 + m10 + m01 + m20 + m11 + m02;
+    }
+
+    // show the cost per operation of a measured loop
+    private void showCost(String operation, long nanos)
+    {
+        showCost(operation, nanos, loops);
+    }
+
+    // show the cost per operation of a measured loop with the given number of calls
+    private void showCost(String operation, long nanos, int calls)
+    {
+        System.out.println(operation + ": " + String.format("%.1f", nanos / 1000.0 / calls) + " us per call");
+    }
+}
@@ -30,6 +30,9 @@ public class TronTest {
 
         TestVision testVision = new TestVision();
         //testVision.makeTest();
+
+        TestPerformance testPerformance = new TestPerformance();
+        //testPerformance.makeTest();
     }
     
 }
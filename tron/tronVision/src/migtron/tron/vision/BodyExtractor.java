@@ -0,0 +1,343 @@
+/*
+ *  Copyright (C) 2019 by Migtron Robotics   
+ *  albarral@migtron.com
+ */
+package migtron.tron.vision;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import migtron.tron.cv.Mask;
+import migtron.tron.cv.Moments;
+import migtron.tron.data.Blob;
+import migtron.tron.data.Body;
+import migtron.tron.data.ColorBlob;
+import migtron.tron.math.Ellipse;
+import migtron.tron.math.Vec3f;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+/**
+* Utility class to extract bodies from segmented images using connected components labeling.
+* It uses a two pass union-find labeling. The first pass assigns provisional labels while accumulating each label's statistics
+* (window, mass, moments and color sums), and equivalent labels are then folded into their root, so no component needs to be rescanned.
+* A final walk of the labels buffer draws the body masks, which are created with their already known moments.
+* The input can be a binary image (all non zero pixels belong to the foreground) or a label image (adjacent pixels of equal non zero value are connected).
+* @author albarral
+ */
+
+public class BodyExtractor
+{
+    // statistics stored for each label
+    private static final int MASS = 0;
+    private static final int SUMX = 1;
+    private static final int SUMY = 2;
+    private static final int SUMXX = 3;
+    private static final int SUMXY = 4;
+    private static final int SUMYY = 5;
+    private static final int MINX = 6;
+    private static final int MINY = 7;
+    private static final int MAXX = 8;
+    private static final int MAXY = 9;
+    private static final int SUMR = 10;
+    private static final int SUMG = 11;
+    private static final int SUMB = 12;
+    private static final int STATS = 13;
+    private boolean beightConnected;    // connectivity (8 neighbours if true, 4 otherwise)
+    private int minMass;        // minimum mass of extracted bodies
+    // labeling buffers (reused for images of same size)
+    private int[] values;   // pixel values
+    private byte[] colors;  // pixel colors (rgb)
+    private int[] labels;   // provisional pixel labels (0 for background)
+    private int[] parent;   // union-find forest of provisional labels
+    private long[] stats;   // statistics of provisional labels
+    private int numLabels;  // number of provisional labels (label 0 not used)
+
+    public BodyExtractor(boolean beightConnected, int minMass)
+    {
+        this.beightConnected = beightConnected;
+        this.minMass = minMass;
+        values = new int[0];
+        colors = new byte[0];
+        labels = new int[0];
+        parent = new int[256];
+        stats = new long[256*STATS];
+    }
+
+    public BodyExtractor()
+    {
+        // 8 connectivity and single pixel bodies by default
+        this(true, 1);
+    }
+
+    public boolean isEightConnected() {return beightConnected;};
+    public int getMinMass() {return minMass;};
+    public void setMinMass(int value) {minMass = value;};
+
+    // extract the bodies of a binary image (byte single channel)
+    public List<Body> extractFromBinary(Mat image, Mat rgbImage)
+    {
+        return extract(image, rgbImage, true);
+    }
+
+    // extract the bodies of a label image (byte or int single channel)
+    public List<Body> extractFromLabels(Mat image, Mat rgbImage)
+    {
+        return extract(image, rgbImage, false);
+    }
+
+    // extract the bodies of a segmented image, with their mean colors taken from the given rgb image (can be null)
+    private List<Body> extract(Mat image, Mat rgbImage, boolean bbinary)
+    {
+        // safety checks
+        if (image.type() != CvType.CV_8UC1 && image.type() != CvType.CV_32SC1)
+            throw new java.lang.IllegalArgumentException("BodyExtractor: segmented images must be single channel byte or int images");
+        int w = image.width();
+        int h = image.height();
+        boolean bcolor = (rgbImage != null && !rgbImage.empty());
+        if (bcolor && (rgbImage.type() != CvType.CV_8UC3 || rgbImage.width() != w || rgbImage.height() != h))
+            throw new java.lang.IllegalArgumentException("BodyExtractor: color images must be RGB byte images of the segmented image size");
+
+        readValues(image, bbinary);
+        if (bcolor)
+        {
+            if (colors.length != 3*w*h)
+                colors = new byte[3*w*h];
+            rgbImage.get(0, 0, colors);
+        }
+
+        labelPixels(w, h, bcolor);
+        int numBodies = resolveLabels();
+        return buildBodies(w, h, numBodies);
+    }
+
+    // read the image values into the values buffer (binary images are reduced to 0/1 values)
+    private void readValues(Mat image, boolean bbinary)
+    {
+        int size = image.width()*image.height();
+        if (values.length != size)
+        {
+            values = new int[size];
+            labels = new int[size];
+        }
+        if (image.type() == CvType.CV_32SC1)
+            image.get(0, 0, values);
+        else
+        {
+            byte[] buffer = new byte[size];
+            image.get(0, 0, buffer);
+            for (int i=0; i<size; i++)
+                values[i] = buffer[i] & 0xFF;
+        }
+        if (bbinary)
+        {
+            for (int i=0; i<size; i++)
+                values[i] = (values[i] != 0) ? 1 : 0;
+        }
+    }
+
+    // first pass: assign provisional labels to all pixels, accumulating the statistics of each label
+    private void labelPixels(int w, int h, boolean bcolor)
+    {
+        numLabels = 0;
+        int i = 0;
+        for (int y=0; y<h; y++)
+        {
+            for (int x=0; x<w; x++, i++)
+            {
+                int value = values[i];
+                if (value == 0)
+                {
+                    labels[i] = 0;
+                    continue;
+                }
+                // join the labels of connected neighbours already visited
+                int label = 0;
+                if (x > 0 && values[i-1] == value)
+                    label = labels[i-1];
+                if (y > 0)
+                {
+                    if (values[i-w] == value)
+                        label = join(label, labels[i-w]);
+                    if (beightConnected)
+                    {
+                        if (x > 0 && values[i-w-1] == value)
+                            label = join(label, labels[i-w-1]);
+                        if (x < w-1 && values[i-w+1] == value)
+                            label = join(label, labels[i-w+1]);
+                    }
+                }
+                if (label == 0)
+                    label = newLabel(x, y);
+                labels[i] = label;
+
+                // accumulate label statistics
+                int k = label*STATS;
+                stats[k+MASS]++;
+                stats[k+SUMX] += x;
+                stats[k+SUMY] += y;
+                stats[k+SUMXX] += x*x;
+                stats[k+SUMXY] += x*y;
+                stats[k+SUMYY] += y*y;
+                if (x < stats[k+MINX]) stats[k+MINX] = x;
+                if (x > stats[k+MAXX]) stats[k+MAXX] = x;
+                stats[k+MAXY] = y;
+                if (bcolor)
+                {
+                    stats[k+SUMR] += colors[3*i] & 0xFF;
+                    stats[k+SUMG] += colors[3*i+1] & 0xFF;
+                    stats[k+SUMB] += colors[3*i+2] & 0xFF;
+                }
+            }
+        }
+    }
+
+    // fold the statistics of every label into its root label
+    // returns the number of bodies found (roots with enough mass)
+    private int resolveLabels()
+    {
+        for (int label=1; label<=numLabels; label++)
+        {
+            int root = find(label);
+            // flatten the tree, so the root of any label is directly its parent
+            parent[label] = root;
+            if (root != label)
+            {
+                int k = label*STATS;
+                int kr = root*STATS;
+                for (int s=MASS; s<=SUMYY; s++)
+                    stats[kr+s] += stats[k+s];
+                for (int s=SUMR; s<=SUMB; s++)
+                    stats[kr+s] += stats[k+s];
+                stats[kr+MINX] = Math.min(stats[kr+MINX], stats[k+MINX]);
+                stats[kr+MINY] = Math.min(stats[kr+MINY], stats[k+MINY]);
+                stats[kr+MAXX] = Math.max(stats[kr+MAXX], stats[k+MAXX]);
+                stats[kr+MAXY] = Math.max(stats[kr+MAXY], stats[k+MAXY]);
+            }
+        }
+
+        // count the roots with enough mass
+        int numBodies = 0;
+        for (int label=1; label<=numLabels; label++)
+        {
+            if (parent[label] == label && stats[label*STATS+MASS] >= minMass)
+                numBodies++;
+        }
+        return numBodies;
+    }
+
+    // second walk: draw the masks of all bodies and create them with their statistics
+    private List<Body> buildBodies(int w, int h, int numBodies)
+    {
+        // assign body indices to roots and create the mask buffers
+        int[] bodyIndex = new int[numLabels+1];
+        int[] roots = new int[numBodies];
+        byte[][] buffers = new byte[numBodies][];
+        int b = 0;
+        for (int label=1; label<=numLabels; label++)
+        {
+            bodyIndex[label] = -1;
+            int k = label*STATS;
+            if (parent[label] == label && stats[k+MASS] >= minMass)
+            {
+                int bw = (int)(stats[k+MAXX] - stats[k+MINX] + 1);
+                int bh = (int)(stats[k+MAXY] - stats[k+MINY] + 1);
+                buffers[b] = new byte[bw*bh];
+                roots[b] = label;
+                bodyIndex[label] = b++;
+            }
+        }
+
+        // draw masks
+        int i = 0;
+        for (int y=0; y<h; y++)
+        {
+            for (int x=0; x<w; x++, i++)
+            {
+                if (labels[i] == 0)
+                    continue;
+                int root = parent[labels[i]];
+                int index = bodyIndex[root];
+                if (index >= 0)
+                {
+                    int k = root*STATS;
+                    int bw = (int)(stats[k+MAXX] - stats[k+MINX] + 1);
+                    buffers[index][(y - (int)stats[k+MINY])*bw + x - (int)stats[k+MINX]] = (byte)255;
+                }
+            }
+        }
+
+        // create bodies
+        List<Body> listBodies = new ArrayList<>();
+        for (int j=0; j<numBodies; j++)
+        {
+            int k = roots[j]*STATS;
+            long mass = stats[k+MASS];
+            int x0 = (int)stats[k+MINX];
+            int y0 = (int)stats[k+MINY];
+            Rect window = new Rect(x0, y0, (int)stats[k+MAXX] - x0 + 1, (int)stats[k+MAXY] - y0 + 1);
+            Mat mat = new Mat(window.height, window.width, CvType.CV_8UC1);
+            mat.put(0, 0, buffers[j]);
+            // moments in window coordinates
+            Moments moments = new Moments(mass, stats[k+SUMX], stats[k+SUMY], stats[k+SUMXX], stats[k+SUMXY], stats[k+SUMYY]);
+            moments.translate(-x0, -y0);
+            Mask mask = Mask.createWithMoments(mat, window, moments);
+
+            Ellipse ellipse = moments.computeEllipse(x0, y0);
+            Vec3f rgb = new Vec3f((float)stats[k+SUMR]/mass, (float)stats[k+SUMG]/mass, (float)stats[k+SUMB]/mass);
+            ColorBlob colorBlob = new ColorBlob(new Blob(ellipse, (int)mass), rgb);
+            listBodies.add(new Body(colorBlob, mask));
+        }
+        return listBodies;
+    }
+
+    // create a new provisional label at the given position
+    private int newLabel(int x, int y)
+    {
+        int label = ++numLabels;
+        // grow label buffers if needed
+        if (label >= parent.length)
+        {
+            parent = Arrays.copyOf(parent, 2*parent.length);
+            stats = Arrays.copyOf(stats, 2*stats.length);
+        }
+        parent[label] = label;
+        int k = label*STATS;
+        Arrays.fill(stats, k, k+STATS, 0);
+        stats[k+MINX] = stats[k+MAXX] = x;
+        stats[k+MINY] = stats[k+MAXY] = y;
+        return label;
+    }
+
+    // join two labels as equivalent (the first one can be 0, meaning no label)
+    private int join(int label1, int label2)
+    {
+        if (label1 == 0)
+            return label2;
+        if (label1 != label2)
+        {
+            int root1 = find(label1);
+            int root2 = find(label2);
+            // the smallest root is kept as root
+            if (root1 < root2)
+                parent[root2] = root1;
+            else if (root2 < root1)
+                parent[root1] = root2;
+        }
+        return label1;
+    }
+
+    // find the root of the given label (with path halving)
+    private int find(int label)
+    {
+        while (parent[label] != label)
+        {
+            parent[label] = parent[parent[label]];
+            label = parent[label];
+        }
+        return label;
+    }
+}
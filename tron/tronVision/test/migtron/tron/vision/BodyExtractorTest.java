@@ -0,0 +1,238 @@
+/*
+ *  Copyright (C) 2019 by Migtron Robotics   
+ *  albarral@migtron.com
+ */
+package migtron.tron.vision;
+
+import java.util.List;
+import migtron.tron.cv.Mask;
+import migtron.tron.cv.NativeOpenCV;
+import migtron.tron.data.Body;
+import migtron.tron.math.Vec3f;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+
+/**
+ *
+ * @author albarral
+ */
+public class BodyExtractorTest 
+{
+    private int w;
+    private int h;
+    private Mat image;    // binary image
+    private Rect window1;
+    private Rect window2;
+    private Rect window3;
+    
+    public BodyExtractorTest() {
+    }
+    
+    @BeforeClass
+    public static void setUpClass() {
+        NativeOpenCV.load();
+    }
+    
+    @AfterClass
+    public static void tearDownClass() {
+    }
+    
+    @Before
+    public void setUp() {
+        w = 100;
+        h = 80;
+        // two squares touching diagonally (by a corner) and a small isolated one
+        window1 = new Rect(10, 10, 20, 20);
+        window2 = new Rect(30, 30, 15, 25);
+        window3 = new Rect(70, 10, 3, 2);
+        image = Mat.zeros(h, w, CvType.CV_8UC1);
+        image.submat(window1).setTo(new Scalar(255));
+        image.submat(window2).setTo(new Scalar(255));
+        image.submat(window3).setTo(new Scalar(255));
+    }
+    
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of extractFromBinary method (4 connectivity), of class BodyExtractor.
+     */
+    @Test
+    public void testExtractFromBinary4() 
+    {
+        System.out.println("extractFromBinary 4");
+        BodyExtractor bodyExtractor = new BodyExtractor(false, 1);
+        List<Body> listBodies = bodyExtractor.extractFromBinary(image, null);
+        
+        // diagonal squares are separate bodies
+        Assert.assertEquals(3, listBodies.size());
+        checkBody(listBodies.get(0), window1, image);
+        checkBody(listBodies.get(1), window3, image);
+        checkBody(listBodies.get(2), window2, image);
+    }
+
+    /**
+     * Test of extractFromBinary method (8 connectivity), of class BodyExtractor.
+     */
+    @Test
+    public void testExtractFromBinary8() 
+    {
+        System.out.println("extractFromBinary 8");
+        BodyExtractor bodyExtractor = new BodyExtractor(true, 1);
+        List<Body> listBodies = bodyExtractor.extractFromBinary(image, null);
+        
+        // diagonal squares are joined
+        Assert.assertEquals(2, listBodies.size());
+        Body body = listBodies.get(0);
+        Rect window = new Rect(10, 10, 35, 45);
+        checkBody(body, window, image);
+        Assert.assertEquals((int)(window1.area() + window2.area()), body.getMass());
+        checkBody(listBodies.get(1), window3, image);
+    }
+
+    /**
+     * Test of extractFromBinary method (mass filter), of class BodyExtractor.
+     */
+    @Test
+    public void testExtractMinMass() 
+    {
+        System.out.println("extractFromBinary minMass");
+        // the small body is dropped
+        BodyExtractor bodyExtractor = new BodyExtractor(false, 7);
+        List<Body> listBodies = bodyExtractor.extractFromBinary(image, null);
+        Assert.assertEquals(2, listBodies.size());
+        checkBody(listBodies.get(0), window1, image);
+        checkBody(listBodies.get(1), window2, image);
+
+        // a body of exactly the minimum mass is kept
+        bodyExtractor.setMinMass(6);
+        listBodies = bodyExtractor.extractFromBinary(image, null);
+        Assert.assertEquals(3, listBodies.size());
+
+        // all bodies dropped
+        bodyExtractor.setMinMass(w*h);
+        listBodies = bodyExtractor.extractFromBinary(image, null);
+        Assert.assertTrue(listBodies.isEmpty());
+    }
+
+    /**
+     * Test of extractFromLabels method, of class BodyExtractor.
+     */
+    @Test
+    public void testExtractFromLabels() 
+    {
+        System.out.println("extractFromLabels");
+        // two adjacent regions of different labels, and a region of label 1 elsewhere
+        Rect windowA = new Rect(10, 10, 20, 20);
+        Rect windowB = new Rect(30, 10, 20, 20);
+        Rect windowC = new Rect(60, 50, 10, 10);
+        Mat labelImage = Mat.zeros(h, w, CvType.CV_32SC1);
+        labelImage.submat(windowA).setTo(new Scalar(1));
+        labelImage.submat(windowB).setTo(new Scalar(1000));
+        labelImage.submat(windowC).setTo(new Scalar(1));
+
+        BodyExtractor bodyExtractor = new BodyExtractor(true, 1);
+        List<Body> listBodies = bodyExtractor.extractFromLabels(labelImage, null);
+        // adjacent regions of different labels are not connected, regions of equal label apart are not either
+        Assert.assertEquals(3, listBodies.size());
+        checkBody(listBodies.get(0), windowA, null);
+        checkBody(listBodies.get(1), windowB, null);
+        checkBody(listBodies.get(2), windowC, null);
+
+        // same with a byte label image
+        Mat labelImage8 = Mat.zeros(h, w, CvType.CV_8UC1);
+        labelImage8.submat(windowA).setTo(new Scalar(1));
+        labelImage8.submat(windowB).setTo(new Scalar(200));
+        labelImage8.submat(windowC).setTo(new Scalar(1));
+        listBodies = bodyExtractor.extractFromLabels(labelImage8, null);
+        Assert.assertEquals(3, listBodies.size());
+        checkBody(listBodies.get(0), windowA, null);
+        checkBody(listBodies.get(1), windowB, null);
+        checkBody(listBodies.get(2), windowC, null);
+
+        // as a binary image all regions touching are joined
+        listBodies = bodyExtractor.extractFromBinary(labelImage8, null);
+        Assert.assertEquals(2, listBodies.size());
+        Assert.assertEquals((int)(windowA.area() + windowB.area()), listBodies.get(0).getMass());
+    }
+
+    /**
+     * Test of extractFromBinary method (body colors), of class BodyExtractor.
+     */
+    @Test
+    public void testExtractColors() 
+    {
+        System.out.println("extractFromBinary colors");
+        Mat rgbImage = new Mat(h, w, CvType.CV_8UC3, new Scalar(10, 20, 30));
+        // half of the first body has another color
+        rgbImage.submat(new Rect(10, 10, 10, 20)).setTo(new Scalar(110, 120, 130));
+
+        BodyExtractor bodyExtractor = new BodyExtractor(false, 1);
+        List<Body> listBodies = bodyExtractor.extractFromBinary(image, rgbImage);
+        Assert.assertEquals(3, listBodies.size());
+        Vec3f rgb1 = listBodies.get(0).getRGB();
+        Assert.assertEquals(60f, rgb1.getX(), 0.001f);
+        Assert.assertEquals(70f, rgb1.getY(), 0.001f);
+        Assert.assertEquals(80f, rgb1.getZ(), 0.001f);
+        Vec3f rgb2 = listBodies.get(2).getRGB();
+        Assert.assertEquals(10f, rgb2.getX(), 0.001f);
+        Assert.assertEquals(20f, rgb2.getY(), 0.001f);
+        Assert.assertEquals(30f, rgb2.getZ(), 0.001f);
+    }
+
+    /**
+     * Test of extractFromBinary method (invalid inputs), of class BodyExtractor.
+     */
+    @Test
+    public void testExtractInvalid() 
+    {
+        System.out.println("extractFromBinary invalid");
+        BodyExtractor bodyExtractor = new BodyExtractor();
+        // segmented image of wrong type
+        try 
+        {
+            bodyExtractor.extractFromBinary(new Mat(h, w, CvType.CV_16UC1, new Scalar(0)), null);
+            Assert.fail();
+        }
+        catch (IllegalArgumentException e) {}
+        // color image of wrong type
+        try 
+        {
+            bodyExtractor.extractFromBinary(image, new Mat(h, w, CvType.CV_8UC1, new Scalar(0)));
+            Assert.fail();
+        }
+        catch (IllegalArgumentException e) {}
+        // color image of wrong size
+        try 
+        {
+            bodyExtractor.extractFromBinary(image, new Mat(h/2, w, CvType.CV_8UC3, new Scalar(0)));
+            Assert.fail();
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    // check the body window, mass and mask (the mask moments must match those computed from the mask matrix)
+    // if an image is given, the mask must match the image in the body window
+    private void checkBody(Body body, Rect window, Mat image)
+    {
+        Mask mask = body.getMask();
+        Assert.assertEquals(window, mask.getWindow());
+        int mass = mask.computeMass();
+        Assert.assertEquals(mass, body.getMass());
+        Mask mask2 = new Mask(mask.getMat().clone());
+        Assert.assertEquals(mask2.computeMoments(), mask.computeMoments());
+        if (image != null)
+            Assert.assertEquals(org.opencv.core.Core.countNonZero(image.submat(window)), mass);
+    }
+}